@@ -3,6 +3,14 @@ package com.se421.dataflow;
 import org.eclipse.ui.plugin.AbstractUIPlugin;
 import org.osgi.framework.BundleContext;
 
+import com.ensoftcorp.atlas.core.indexing.IIndexListener;
+import com.ensoftcorp.atlas.core.indexing.IndexingUtil;
+import com.se421.dataflow.dependence.DDGCache;
+import com.se421.dataflow.support.CallGraphIndex;
+import com.se421.dataflow.support.ContainmentIndex;
+import com.se421.dataflow.support.DataFlowIndex;
+import com.se421.dataflow.support.DominanceIndex;
+
 /**
  * The activator class controls the plug-in life cycle
  */
@@ -14,6 +22,9 @@ public class Activator extends AbstractUIPlugin {
 	// The shared instance
 	private static Activator plugin;
 
+	// clears the analysis caches whenever the index changes
+	private IIndexListener indexListener = null;
+
 	/**
 	 * The constructor
 	 */
@@ -28,6 +39,27 @@ public class Activator extends AbstractUIPlugin {
 	public void start(BundleContext context) throws Exception {
 		super.start(context);
 		plugin = this;
+		indexListener = new IIndexListener() {
+			@Override
+			public void indexOperationStarted(IndexOperation op) {
+				clearCaches();
+			}
+
+			@Override
+			public void indexOperationComplete(IndexOperation op) {
+				clearCaches();
+			}
+
+			@Override
+			public void indexOperationScheduled(IndexOperation op) {}
+
+			@Override
+			public void indexOperationError(IndexOperation op, Throwable error) {}
+
+			@Override
+			public void indexOperationCancelled(IndexOperation op) {}
+		};
+		IndexingUtil.addListener(indexListener);
 	}
 
 	/*
@@ -36,10 +68,26 @@ public class Activator extends AbstractUIPlugin {
 	 */
 	@Override
 	public void stop(BundleContext context) throws Exception {
+		if(indexListener != null) {
+			IndexingUtil.removeListener(indexListener);
+			indexListener = null;
+		}
+		clearCaches();
 		plugin = null;
 		super.stop(context);
 	}
 	
+	/**
+	 * Clears any cached analysis results that are tied to the current index
+	 */
+	public static void clearCaches() {
+		DDGCache.clear();
+		ContainmentIndex.clearCache();
+		DominanceIndex.clearCache();
+		DataFlowIndex.clearCache();
+		CallGraphIndex.clearCache();
+	}
+
 	/**
 	 * Returns the shared instance
 	 *
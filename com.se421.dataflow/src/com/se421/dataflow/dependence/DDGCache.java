@@ -0,0 +1,184 @@
+package com.se421.dataflow.dependence;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.ensoftcorp.atlas.core.db.graph.Edge;
+import com.ensoftcorp.atlas.core.db.graph.Node;
+import com.ensoftcorp.atlas.core.db.set.AtlasHashSet;
+import com.ensoftcorp.atlas.core.db.set.AtlasSet;
+import com.ensoftcorp.atlas.core.query.Q;
+import com.ensoftcorp.atlas.core.script.Common;
+import com.se421.dataflow.support.HelperQueries;
+
+/**
+ * A size bounded, least recently used cache of the data dependence graphs
+ * of functions keyed by the address of the function.
+ *
+ * Each cached graph also holds an index of its data dependence edges by
+ * dependent variable, which is built on the first variable lookup.
+ *
+ * The cache must be cleared whenever the Atlas index changes, since node
+ * addresses are not stable across index builds (the plugin activator takes
+ * care of this).
+ *
+ * Example Atlas Shell Usage:
+ * var function = functions("dskqopt").eval().nodes().one()
+ * show(DDGCache.getVariableDependenceEdges(function, "x"))
+ */
+public final class DDGCache {
+
+	public static final int DEFAULT_CAPACITY = 64;
+
+	private static int capacity = DEFAULT_CAPACITY;
+	private static long hits = 0;
+	private static long misses = 0;
+
+	private static final LinkedHashMap<String,CachedDDG> cache = new LinkedHashMap<String,CachedDDG>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String,CachedDDG> eldest) {
+			return size() > capacity;
+		}
+	};
+
+	// hide constructor
+	private DDGCache() {}
+
+	/**
+	 * Returns the data dependence graph of the data flow graph of the given function
+	 * @param function
+	 * @return
+	 */
+	public static DataDependenceGraph getDDG(Node function) {
+		CachedDDG cachedDDG = getCachedDDG(function);
+		synchronized (cachedDDG) {
+			return getDDG(function, cachedDDG);
+		}
+	}
+
+	/**
+	 * Returns the cached graph, building it if necessary (the caller must hold the entry's lock)
+	 * @param function
+	 * @param cachedDDG
+	 * @return
+	 */
+	private static DataDependenceGraph getDDG(Node function, CachedDDG cachedDDG) {
+		if(cachedDDG.ddg == null) {
+			Q dfg = HelperQueries.dfg(function);
+			cachedDDG.ddg = new DataDependenceGraph(dfg.eval());
+		}
+		return cachedDDG.ddg;
+	}
+
+	/**
+	 * Returns the data dependence edges of the given function
+	 * @param function
+	 * @return
+	 */
+	public static Q getDataDependenceEdges(Node function) {
+		return getDDG(function).getGraph().edges(DataDependenceGraph.DATA_DEPENDENCE_EDGE);
+	}
+
+	/**
+	 * Returns the data dependence edges of the given function for the given
+	 * dependent variable
+	 * @param function
+	 * @param variableName
+	 * @return
+	 */
+	public static Q getVariableDependenceEdges(Node function, String variableName) {
+		CachedDDG cachedDDG = getCachedDDG(function);
+		synchronized (cachedDDG) {
+			if(cachedDDG.variableDependenceEdges == null) {
+				HashMap<String,AtlasSet<Edge>> variableDependenceEdges = new HashMap<String,AtlasSet<Edge>>();
+				Q dataDependenceEdges = getDDG(function, cachedDDG).getGraph().edges(DataDependenceGraph.DATA_DEPENDENCE_EDGE);
+				for(Edge dataDependenceEdge : dataDependenceEdges.eval().edges()) {
+					Object dependentVariable = dataDependenceEdge.getAttr(DataDependenceGraph.DEPENDENT_VARIABLE);
+					if(dependentVariable == null) {
+						continue;
+					}
+					AtlasSet<Edge> edges = variableDependenceEdges.get(dependentVariable.toString());
+					if(edges == null) {
+						edges = new AtlasHashSet<Edge>();
+						variableDependenceEdges.put(dependentVariable.toString(), edges);
+					}
+					edges.add(dataDependenceEdge);
+				}
+				cachedDDG.variableDependenceEdges = variableDependenceEdges;
+			}
+			AtlasSet<Edge> edges = cachedDDG.variableDependenceEdges.get(variableName);
+			return edges == null ? Common.empty() : Common.toQ(edges);
+		}
+	}
+
+	private static CachedDDG getCachedDDG(Node function) {
+		String key = function.address().toAddressString();
+		synchronized (cache) {
+			CachedDDG cachedDDG = cache.get(key);
+			if(cachedDDG != null) {
+				hits++;
+				return cachedDDG;
+			}
+			misses++;
+			cachedDDG = new CachedDDG();
+			cache.put(key, cachedDDG);
+			// note: the graph is computed lazily outside of the cache lock
+			// so that different functions can be computed concurrently
+			return cachedDDG;
+		}
+	}
+
+	/**
+	 * Clears the cache, this must be done if the index changes
+	 */
+	public static void clear() {
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+
+	/**
+	 * Sets the maximum number of cached data dependence graphs
+	 * @param capacity
+	 */
+	public static void setCapacity(int capacity) {
+		if(capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be positive.");
+		}
+		synchronized (cache) {
+			DDGCache.capacity = capacity;
+			while(cache.size() > capacity) {
+				cache.remove(cache.keySet().iterator().next());
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of lookups that were answered from the cache
+	 * @return
+	 */
+	public static long getHits() {
+		synchronized (cache) {
+			return hits;
+		}
+	}
+
+	/**
+	 * Returns the number of lookups that required a data dependence graph to be built
+	 * @return
+	 */
+	public static long getMisses() {
+		synchronized (cache) {
+			return misses;
+		}
+	}
+
+	private static class CachedDDG {
+		private DataDependenceGraph ddg = null;
+		private HashMap<String,AtlasSet<Edge>> variableDependenceEdges = null;
+	}
+
+}
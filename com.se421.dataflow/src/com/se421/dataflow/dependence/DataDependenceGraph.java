@@ -1,7 +1,14 @@
 package com.se421.dataflow.dependence;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
 import com.ensoftcorp.atlas.core.db.graph.Edge;
 import com.ensoftcorp.atlas.core.db.graph.Graph;
+import com.ensoftcorp.atlas.core.db.graph.GraphElement.NodeDirection;
 import com.ensoftcorp.atlas.core.db.graph.Node;
 import com.ensoftcorp.atlas.core.db.set.AtlasHashSet;
 import com.ensoftcorp.atlas.core.db.set.AtlasSet;
@@ -56,6 +63,18 @@ public class DataDependenceGraph extends DependenceGraph {
 	private Graph ddg; // data dependency graph
 
 	public DataDependenceGraph(Graph dfg){
+		this(computeDependences(dfg), new DependenceEdgeIndex(DATA_DEPENDENCE_EDGE));
+	}
+
+	/**
+	 * Commits the given precomputed dependences of a data flow graph to the
+	 * universe graph. Only one thread may commit dependences at a time.
+	 * @param dependences
+	 * @param dataDependenceEdgeIndex index of the existing data dependence edges, may be shared between graphs committed by the same thread
+	 */
+	DataDependenceGraph(Dependences dependences, DependenceEdgeIndex dataDependenceEdgeIndex){
+		Graph dfg = dependences.dfg;
+
 		// sanity checks
 		if(dfg.nodes().isEmpty() || dfg.edges().isEmpty()){
 			this.dfg = Common.toQ(dfg).eval();
@@ -70,6 +89,114 @@ public class DataDependenceGraph extends DependenceGraph {
 		AtlasSet<Edge> backwardDataDependenceEdgeSet = new AtlasHashSet<Edge>();
 		AtlasSet<Edge> interDataDependenceEdgeSet = new AtlasHashSet<Edge>();
 
+		for(Dependence dependence : dependences.statementDependences) {
+			commit(dependence, dataDependenceEdgeIndex, dataDependenceEdgeSet, pointerDependenceEdgeSet, backwardDataDependenceEdgeSet, interDataDependenceEdgeSet);
+		}
+
+		if(!pointerDependenceEdgeSet.isEmpty()) {
+			for(Edge pointerDependenceEdge : pointerDependenceEdgeSet) {
+				Node fromStatement = pointerDependenceEdge.from();
+				Node toStatement = pointerDependenceEdge.to();
+				String dependentVariableName = pointerDependenceEdge.getAttr(DEPENDENT_VARIABLE).toString().replace("=", "");
+				if(!toStatement.getAttr(XCSG.name).toString().contains(dependentVariableName)) {
+					// We need to redirect this edge. This is not the right data dependence edge
+					pointerDependenceEdge.untag(DATA_DEPENDENCE_EDGE);
+					dataDependenceEdgeIndex.remove(pointerDependenceEdge);
+					dataDependenceEdgeSet.remove(pointerDependenceEdge);
+					AtlasSet<Node> redirectionTargets = getRedirectionTargets(toStatement, dependentVariableName);
+					for(Node redirectionTarget : redirectionTargets) {
+						Edge dataDependenceEdge = dataDependenceEdgeIndex.get(fromStatement, redirectionTarget);
+						if(dataDependenceEdge == null){
+							dataDependenceEdge = Graph.U.createEdge(fromStatement, redirectionTarget);
+							dataDependenceEdge.tag(DATA_DEPENDENCE_EDGE);
+							dataDependenceEdge.tag(BACKWARD_DATA_DEPENDENCE_EDGE);
+							dataDependenceEdge.putAttr(XCSG.name, DATA_DEPENDENCE_EDGE);
+							dataDependenceEdge.putAttr(DEPENDENT_VARIABLE, dependentVariableName);
+							dataDependenceEdgeIndex.add(dataDependenceEdge);
+						}
+						dataDependenceEdgeSet.add(dataDependenceEdge);
+						backwardDataDependenceEdgeSet.add(dataDependenceEdge);
+					}
+				}
+			}
+		}
+
+		for(Dependence dependence : dependences.interproceduralDependences) {
+			commit(dependence, dataDependenceEdgeIndex, dataDependenceEdgeSet, pointerDependenceEdgeSet, backwardDataDependenceEdgeSet, interDataDependenceEdgeSet);
+		}
+
+		this.ddg = Common.toQ(dataDependenceEdgeSet).eval();
+	}
+
+	/**
+	 * Creates the edge of the given dependence if an equivalent edge does not
+	 * already exist and adds the edge to the sets corresponding to its kind
+	 */
+	private static void commit(Dependence dependence, DependenceEdgeIndex dataDependenceEdgeIndex, AtlasSet<Edge> dataDependenceEdgeSet,
+			AtlasSet<Edge> pointerDependenceEdgeSet, AtlasSet<Edge> backwardDataDependenceEdgeSet, AtlasSet<Edge> interDataDependenceEdgeSet) {
+		Node fromStatement = dependence.fromStatement;
+		Node toStatement = dependence.toStatement;
+
+		if(JIMPLE_INITIALIZATION_DATA_DEPENDENCE_EDGE.equals(dependence.kind)) {
+			// create a data dependency edge from the initialization statement to the instantiation statement
+			// if one does not already exist
+			if(HelperQueries.isEmpty(Query.universe().edges(DataDependenceGraph.JIMPLE_INITIALIZATION_DATA_DEPENDENCE_EDGE).between(Common.toQ(fromStatement), Common.toQ(toStatement)))) {
+				Edge dataDependenceEdge = Graph.U.createEdge(fromStatement, toStatement);
+				dataDependenceEdge.tag(DataDependenceGraph.DATA_DEPENDENCE_EDGE);
+				dataDependenceEdge.tag(DataDependenceGraph.JIMPLE_INITIALIZATION_DATA_DEPENDENCE_EDGE);
+				dataDependenceEdge.putAttr(XCSG.name, DataDependenceGraph.DATA_DEPENDENCE_EDGE);
+				dataDependenceEdgeIndex.add(dataDependenceEdge);
+				dataDependenceEdgeSet.add(dataDependenceEdge);
+			}
+			return;
+		}
+
+		Edge dataDependenceEdge = dataDependenceEdgeIndex.get(fromStatement, toStatement);
+		if(dataDependenceEdge == null){
+			dataDependenceEdge = Graph.U.createEdge(fromStatement, toStatement);
+			dataDependenceEdge.tag(DATA_DEPENDENCE_EDGE);
+			if(dependence.kind != null) {
+				dataDependenceEdge.tag(dependence.kind);
+			}
+			dataDependenceEdge.putAttr(XCSG.name, dependence.name);
+			if(dependence.dependentVariable != null) {
+				dataDependenceEdge.putAttr(DEPENDENT_VARIABLE, dependence.dependentVariable);
+			}
+			if(dependence.kind == null && dependence.dependentVariable != null) {
+				Log.info(fromStatement.getAttr(XCSG.name) + " -> " + toStatement.getAttr(XCSG.name));
+			}
+			dataDependenceEdgeIndex.add(dataDependenceEdge);
+		}
+
+		// global data dependence edges are not part of the intra-procedural graph
+		if(GLOBAL_DATA_DEPENDENCE_EDGE.equals(dependence.kind)) {
+			return;
+		}
+		dataDependenceEdgeSet.add(dataDependenceEdge);
+		if(POINTER_DEPENDENCE_EDGE.equals(dependence.kind)) {
+			pointerDependenceEdgeSet.add(dataDependenceEdge);
+		} else if(BACKWARD_DATA_DEPENDENCE_EDGE.equals(dependence.kind)) {
+			backwardDataDependenceEdgeSet.add(dataDependenceEdge);
+		} else if(INTERPROCEDURAL_DATA_DEPENDENCE_EDGE.equals(dependence.kind)) {
+			interDataDependenceEdgeSet.add(dataDependenceEdge);
+		}
+	}
+
+	/**
+	 * Computes the data dependences between the statements of the given data
+	 * flow graph without modifying the universe graph, so the dependences of
+	 * different functions may be computed concurrently
+	 * @param dfg
+	 * @return
+	 */
+	static Dependences computeDependences(Graph dfg){
+		Dependences dependences = new Dependences(dfg);
+
+		// sanity checks
+		if(dfg.nodes().isEmpty() || dfg.edges().isEmpty()){
+			return dependences;
+		}
+
 		if(!HelperQueries.isEmpty(Common.toQ(dfg).nodes(XCSG.Language.Jimple))) {
 			// this is sort of a logical patch for an oddity in jimple
 			// 1. $r0 = new java.io.FileInputStream;
@@ -89,16 +216,8 @@ public class DataDependenceGraph extends DependenceGraph {
 						Node instantiationStatement = Common.toQ(dfg).predecessors(Common.toQ(identityPass)).parent()
 								.intersection(instantiationStatements).eval().nodes().one();
 						if(instantiationStatement != null) {
-							// create a data dependency edge from the initialization statement to the instantiation statement
-							// if one does not already exist
 							if(!initializationStatement.equals(instantiationStatement)) {
-								if(HelperQueries.isEmpty(Query.universe().edges(DataDependenceGraph.JIMPLE_INITIALIZATION_DATA_DEPENDENCE_EDGE).between(Common.toQ(initializationStatement), Common.toQ(instantiationStatement)))) {
-									Edge dataDependenceEdge = Graph.U.createEdge(initializationStatement, instantiationStatement);
-									dataDependenceEdge.tag(DataDependenceGraph.DATA_DEPENDENCE_EDGE);
-									dataDependenceEdge.tag(DataDependenceGraph.JIMPLE_INITIALIZATION_DATA_DEPENDENCE_EDGE);
-									dataDependenceEdge.putAttr(XCSG.name, DataDependenceGraph.DATA_DEPENDENCE_EDGE);
-									dataDependenceEdgeSet.add(dataDependenceEdge);
-								}
+								dependences.addStatementDependence(initializationStatement, instantiationStatement, JIMPLE_INITIALIZATION_DATA_DEPENDENCE_EDGE, DATA_DEPENDENCE_EDGE, null);
 							}
 						}
 					}
@@ -117,7 +236,7 @@ public class DataDependenceGraph extends DependenceGraph {
 			if(to.taggedWith(XCSG.ReturnValue)){
 				continue;
 			}
-			
+
 			Node toStatement = HelperQueries.getContainingControlFlowNode(to);
 
 			// sanity checks
@@ -138,16 +257,7 @@ public class DataDependenceGraph extends DependenceGraph {
 				continue;
 			}
 
-			Q dataDependenceEdges = Query.universe().edges(DATA_DEPENDENCE_EDGE);
-			Edge dataDependenceEdge = dataDependenceEdges.betweenStep(Common.toQ(fromStatement), Common.toQ(toStatement)).eval().edges().one();
-			if(dataDependenceEdge == null){
-				dataDependenceEdge = Graph.U.createEdge(fromStatement, toStatement);
-				dataDependenceEdge.tag(DATA_DEPENDENCE_EDGE);
-				dataDependenceEdge.putAttr(XCSG.name, DATA_DEPENDENCE_EDGE);
-				dataDependenceEdge.putAttr(DEPENDENT_VARIABLE, from.getAttr(XCSG.name).toString());
-				Log.info(fromStatement.getAttr(XCSG.name) + " -> " + toStatement.getAttr(XCSG.name));
-			}
-			dataDependenceEdgeSet.add(dataDependenceEdge);
+			dependences.addStatementDependence(fromStatement, toStatement, null, DATA_DEPENDENCE_EDGE, from.getAttr(XCSG.name).toString());
 		}
 
 		// consider field reads
@@ -168,14 +278,7 @@ public class DataDependenceGraph extends DependenceGraph {
 					continue;
 				}
 
-				Q dataDependenceEdges = Query.universe().edges(DATA_DEPENDENCE_EDGE);
-				Edge dataDependenceEdge = dataDependenceEdges.betweenStep(Common.toQ(fromStatement), Common.toQ(toStatement)).eval().edges().one();
-				if(dataDependenceEdge == null){
-					dataDependenceEdge = Graph.U.createEdge(fromStatement, toStatement);
-					dataDependenceEdge.tag(DATA_DEPENDENCE_EDGE);
-					dataDependenceEdge.putAttr(XCSG.name, DATA_DEPENDENCE_EDGE);
-				}
-				dataDependenceEdgeSet.add(dataDependenceEdge);
+				dependences.addStatementDependence(fromStatement, toStatement, null, DATA_DEPENDENCE_EDGE, null);
 			}
 		}
 
@@ -194,14 +297,7 @@ public class DataDependenceGraph extends DependenceGraph {
 					continue;
 				}
 
-				Q dataDependenceEdges = Query.universe().edges(DATA_DEPENDENCE_EDGE);
-				Edge dataDependenceEdge = dataDependenceEdges.betweenStep(Common.toQ(fromStatement), Common.toQ(toStatement)).eval().edges().one();
-				if(dataDependenceEdge == null){
-					dataDependenceEdge = Graph.U.createEdge(fromStatement, toStatement);
-					dataDependenceEdge.tag(DATA_DEPENDENCE_EDGE);
-					dataDependenceEdge.putAttr(XCSG.name, DATA_DEPENDENCE_EDGE);
-				}
-				dataDependenceEdgeSet.add(dataDependenceEdge);
+				dependences.addStatementDependence(fromStatement, toStatement, null, DATA_DEPENDENCE_EDGE, null);
 			}
 		}
 
@@ -220,14 +316,7 @@ public class DataDependenceGraph extends DependenceGraph {
 					continue;
 				}
 
-				Q dataDependenceEdges = Query.universe().edges(DATA_DEPENDENCE_EDGE);
-				Edge dataDependenceEdge = dataDependenceEdges.betweenStep(Common.toQ(fromStatement), Common.toQ(toStatement)).eval().edges().one();
-				if(dataDependenceEdge == null){
-					dataDependenceEdge = Graph.U.createEdge(fromStatement, toStatement);
-					dataDependenceEdge.tag(DATA_DEPENDENCE_EDGE);
-					dataDependenceEdge.putAttr(XCSG.name, DATA_DEPENDENCE_EDGE);
-				}
-				dataDependenceEdgeSet.add(dataDependenceEdge);
+				dependences.addStatementDependence(fromStatement, toStatement, null, DATA_DEPENDENCE_EDGE, null);
 			}
 		}
 
@@ -256,17 +345,7 @@ public class DataDependenceGraph extends DependenceGraph {
 				Node dependentVariable = edgeToProcess.from();
 				if(dependentVariable.taggedWith(XCSG.Assignment)) {
 					Node fromStatement = HelperQueries.getContainingControlFlowNode(dependentVariable);
-					Q dataDependenceEdges = Query.universe().edges(DATA_DEPENDENCE_EDGE);
-					Edge dataDependenceEdge = dataDependenceEdges.betweenStep(Common.toQ(fromStatement), Common.toQ(toStatement)).eval().edges().one();
-					if(dataDependenceEdge == null){
-						dataDependenceEdge = Graph.U.createEdge(fromStatement, toStatement);
-						dataDependenceEdge.tag(DATA_DEPENDENCE_EDGE);
-						dataDependenceEdge.tag(POINTER_DEPENDENCE_EDGE);
-						dataDependenceEdge.putAttr(XCSG.name, DATA_DEPENDENCE_EDGE);
-						dataDependenceEdge.putAttr(DEPENDENT_VARIABLE, dependentVariable.getAttr(XCSG.name).toString());
-					}
-					dataDependenceEdgeSet.add(dataDependenceEdge);
-					pointerDependenceEdgeSet.add(dataDependenceEdge);
+					dependences.addStatementDependence(fromStatement, toStatement, POINTER_DEPENDENCE_EDGE, DATA_DEPENDENCE_EDGE, dependentVariable.getAttr(XCSG.name).toString());
 				}
 			}
 
@@ -277,44 +356,7 @@ public class DataDependenceGraph extends DependenceGraph {
 				Q possibleTargetDefinitions = Query.universe().edges("identifier").predecessors(stackVariable);
 				for(Node possibleTargetDefinition : possibleTargetDefinitions.eval().nodes()) {
 					Node fromStatement = HelperQueries.getContainingControlFlowNode(possibleTargetDefinition);
-					Q dataDependenceEdges = Query.universe().edges(DATA_DEPENDENCE_EDGE);
-					Edge dataDependenceEdge = dataDependenceEdges.betweenStep(Common.toQ(fromStatement), Common.toQ(toStatement)).eval().edges().one();
-					if(dataDependenceEdge == null){
-						dataDependenceEdge = Graph.U.createEdge(fromStatement, toStatement);
-						dataDependenceEdge.tag(DATA_DEPENDENCE_EDGE);
-						dataDependenceEdge.tag(BACKWARD_DATA_DEPENDENCE_EDGE);
-						dataDependenceEdge.putAttr(XCSG.name, DATA_DEPENDENCE_EDGE);
-						dataDependenceEdge.putAttr(DEPENDENT_VARIABLE, stackVariable.eval().nodes().one().getAttr(XCSG.name).toString());
-					}
-					dataDependenceEdgeSet.add(dataDependenceEdge);
-					backwardDataDependenceEdgeSet.add(dataDependenceEdge);
-				}
-			}
-		}
-
-		if(!pointerDependenceEdgeSet.isEmpty()) {
-			for(Edge pointerDependenceEdge : pointerDependenceEdgeSet) {
-				Node fromStatement = pointerDependenceEdge.from();
-				Node toStatement = pointerDependenceEdge.to();
-				String dependentVariableName = pointerDependenceEdge.getAttr(DEPENDENT_VARIABLE).toString().replace("=", "");
-				if(!toStatement.getAttr(XCSG.name).toString().contains(dependentVariableName)) {
-					// We need to redirect this edge. This is not the right data dependence edge
-					pointerDependenceEdge.untag(DATA_DEPENDENCE_EDGE);
-					dataDependenceEdgeSet.remove(pointerDependenceEdge);
-					AtlasSet<Node> redirectionTargets = getRedirectionTargets(toStatement, dependentVariableName);
-					for(Node redirectionTarget : redirectionTargets) {
-						Q dataDependenceEdges = Query.universe().edges(DATA_DEPENDENCE_EDGE);
-						Edge dataDependenceEdge = dataDependenceEdges.betweenStep(Common.toQ(fromStatement), Common.toQ(redirectionTarget)).eval().edges().one();
-						if(dataDependenceEdge == null){
-							dataDependenceEdge = Graph.U.createEdge(fromStatement, redirectionTarget);
-							dataDependenceEdge.tag(DATA_DEPENDENCE_EDGE);
-							dataDependenceEdge.tag(BACKWARD_DATA_DEPENDENCE_EDGE);
-							dataDependenceEdge.putAttr(XCSG.name, DATA_DEPENDENCE_EDGE);
-							dataDependenceEdge.putAttr(DEPENDENT_VARIABLE, dependentVariableName);
-						}
-						dataDependenceEdgeSet.add(dataDependenceEdge);
-						backwardDataDependenceEdgeSet.add(dataDependenceEdge);
-					}
+					dependences.addStatementDependence(fromStatement, toStatement, BACKWARD_DATA_DEPENDENCE_EDGE, DATA_DEPENDENCE_EDGE, stackVariable.eval().nodes().one().getAttr(XCSG.name).toString());
 				}
 			}
 		}
@@ -335,17 +377,7 @@ public class DataDependenceGraph extends DependenceGraph {
 				String returnVariableName = returnVariable.getAttr(XCSG.name).toString();
 				Node fromStatement = HelperQueries.getContainingControlFlowNode(returnVariable);
 				Node toStatement = HelperQueries.getContainingControlFlowNode(callSite);
-				Q dataDependenceEdges = Query.universe().edges(DATA_DEPENDENCE_EDGE);
-				Edge dataDependenceEdge = dataDependenceEdges.betweenStep(Common.toQ(fromStatement), Common.toQ(toStatement)).eval().edges().one();
-				if(dataDependenceEdge == null){
-					dataDependenceEdge = Graph.U.createEdge(fromStatement, toStatement);
-					dataDependenceEdge.tag(DATA_DEPENDENCE_EDGE);
-					dataDependenceEdge.tag(INTERPROCEDURAL_DATA_DEPENDENCE_EDGE);
-					dataDependenceEdge.putAttr(XCSG.name, INTERPROCEDURAL_DATA_DEPENDENCE_EDGE);
-					dataDependenceEdge.putAttr(DEPENDENT_VARIABLE, returnVariableName);
-				}
-				dataDependenceEdgeSet.add(dataDependenceEdge);
-				interDataDependenceEdgeSet.add(dataDependenceEdge);
+				dependences.addInterproceduralDependence(fromStatement, toStatement, INTERPROCEDURAL_DATA_DEPENDENCE_EDGE, INTERPROCEDURAL_DATA_DEPENDENCE_EDGE, returnVariableName);
 			}
 			AtlasSet<Node> parameterVariables = Common.toQ(callSite).predecessorsOn(passedToEdges).eval().nodes();
 			for(Node parameterVariable : parameterVariables) {
@@ -354,45 +386,110 @@ public class DataDependenceGraph extends DependenceGraph {
 				String parameterVariableName = parameterVariable.getAttr(XCSG.name).toString();
 				for(Node target : targets.eval().nodes()) {
 					Node toStatement = HelperQueries.getContainingControlFlowNode(target);
-					Q dataDependenceEdges = Query.universe().edges(DATA_DEPENDENCE_EDGE);
-					Edge dataDependenceEdge = dataDependenceEdges.betweenStep(Common.toQ(fromStatement), Common.toQ(toStatement)).eval().edges().one();
-					if(dataDependenceEdge == null){
-						dataDependenceEdge = Graph.U.createEdge(fromStatement, toStatement);
-						dataDependenceEdge.tag(DATA_DEPENDENCE_EDGE);
-						dataDependenceEdge.tag(INTERPROCEDURAL_DATA_DEPENDENCE_EDGE);
-						dataDependenceEdge.putAttr(XCSG.name, INTERPROCEDURAL_DATA_DEPENDENCE_EDGE);
-						dataDependenceEdge.putAttr(DEPENDENT_VARIABLE, parameterVariableName);
-					}
-					dataDependenceEdgeSet.add(dataDependenceEdge);
-					interDataDependenceEdgeSet.add(dataDependenceEdge);
-				}	
+					dependences.addInterproceduralDependence(fromStatement, toStatement, INTERPROCEDURAL_DATA_DEPENDENCE_EDGE, INTERPROCEDURAL_DATA_DEPENDENCE_EDGE, parameterVariableName);
+				}
 			}
 		}
 
 		// Handle global variables
-		Q definitions = Common.toQ(dfg).nodes(XCSG.Assignment);
-		Q globalVariables = definitions.successorsOn(Common.universe().edges(XCSG.C.Provisional.NominalDataFlow)).nodes(XCSG.C.Provisional.TentativeGlobalVariableDefinition);
-		for(Node globalVariable : globalVariables.eval().nodes()) {
+		// group the definitions (assignments) of this function by the global variable they write
+		// so that only definitions and uses of the same global variable are related
+		Map<Node,List<Node>> globalVariableDefinitionStatements = new LinkedHashMap<Node,List<Node>>();
+		for(Node definition : Common.toQ(dfg).nodes(XCSG.Assignment).eval().nodes()) {
+			Node fromStatement = null;
+			for(Edge nominalDataFlowEdge : Graph.U.edges(definition, NodeDirection.OUT)) {
+				Node globalVariable = nominalDataFlowEdge.to();
+				if(!nominalDataFlowEdge.taggedWith(XCSG.C.Provisional.NominalDataFlow) || !globalVariable.taggedWith(XCSG.C.Provisional.TentativeGlobalVariableDefinition)) {
+					continue;
+				}
+				if(fromStatement == null) {
+					fromStatement = HelperQueries.getContainingControlFlowNode(definition);
+					if(fromStatement == null) {
+						Log.warning("Definition has no parent or is null: " + definition.address().toAddressString());
+						break;
+					}
+				}
+				List<Node> definitionStatements = globalVariableDefinitionStatements.get(globalVariable);
+				if(definitionStatements == null) {
+					definitionStatements = new ArrayList<Node>();
+					globalVariableDefinitionStatements.put(globalVariable, definitionStatements);
+				}
+				if(!definitionStatements.contains(fromStatement)) {
+					definitionStatements.add(fromStatement);
+				}
+			}
+		}
+		for(Entry<Node,List<Node>> globalVariableDefinitions : globalVariableDefinitionStatements.entrySet()) {
+			Node globalVariable = globalVariableDefinitions.getKey();
 			String globalVariableName = globalVariable.getAttr(XCSG.name).toString();
-			Q globalVariableUses = Common.toQ(globalVariable).successorsOn(Common.universe().edges(XCSG.C.Provisional.NominalDataFlow));
-			for(Node globalVariableUse : globalVariableUses.eval().nodes()) {
-				for(Node definition : definitions.eval().nodes()) {
-					Node fromStatement = HelperQueries.getContainingControlFlowNode(definition);
-					Node toStatement = HelperQueries.getContainingControlFlowNode(globalVariableUse);
-					Q dataDependenceEdges = Query.universe().edges(DATA_DEPENDENCE_EDGE);
-					Edge dataDependenceEdge = dataDependenceEdges.betweenStep(Common.toQ(fromStatement), Common.toQ(toStatement)).eval().edges().one();
-					if(dataDependenceEdge == null){
-						dataDependenceEdge = Graph.U.createEdge(fromStatement, toStatement);
-						dataDependenceEdge.tag(DATA_DEPENDENCE_EDGE);
-						dataDependenceEdge.tag(GLOBAL_DATA_DEPENDENCE_EDGE);
-						dataDependenceEdge.putAttr(XCSG.name, GLOBAL_DATA_DEPENDENCE_EDGE);
-						dataDependenceEdge.putAttr(DEPENDENT_VARIABLE, globalVariableName);
+			for(Edge nominalDataFlowEdge : Graph.U.edges(globalVariable, NodeDirection.OUT)) {
+				if(!nominalDataFlowEdge.taggedWith(XCSG.C.Provisional.NominalDataFlow)) {
+					continue;
+				}
+				Node globalVariableUse = nominalDataFlowEdge.to();
+				Node toStatement = HelperQueries.getContainingControlFlowNode(globalVariableUse);
+				if(toStatement == null) {
+					Log.warning("Use has no parent or is null: " + globalVariableUse.address().toAddressString());
+					continue;
+				}
+				for(Node fromStatement : globalVariableDefinitions.getValue()) {
+					// skip the trivial edges
+					if(fromStatement.equals(toStatement)) {
+						continue;
 					}
+					dependences.addInterproceduralDependence(fromStatement, toStatement, GLOBAL_DATA_DEPENDENCE_EDGE, GLOBAL_DATA_DEPENDENCE_EDGE, globalVariableName);
 				}
 			}
 		}
 
-		this.ddg = Common.toQ(dataDependenceEdgeSet).eval();
+		return dependences;
+	}
+
+	/**
+	 * A buffer of the data dependences computed for a data flow graph that
+	 * have not yet been committed to the universe graph
+	 */
+	static class Dependences {
+		private final Graph dfg;
+		// dependences between the statements of the function, committed before pointer dependences are redirected
+		private final List<Dependence> statementDependences = new ArrayList<Dependence>();
+		// parameter, return and global variable dependences, committed after pointer dependences are redirected
+		private final List<Dependence> interproceduralDependences = new ArrayList<Dependence>();
+
+		private Dependences(Graph dfg) {
+			this.dfg = dfg;
+		}
+
+		private void addStatementDependence(Node fromStatement, Node toStatement, String kind, String name, String dependentVariable) {
+			if(fromStatement != null && toStatement != null) {
+				statementDependences.add(new Dependence(fromStatement, toStatement, kind, name, dependentVariable));
+			}
+		}
+
+		private void addInterproceduralDependence(Node fromStatement, Node toStatement, String kind, String name, String dependentVariable) {
+			if(fromStatement != null && toStatement != null) {
+				interproceduralDependences.add(new Dependence(fromStatement, toStatement, kind, name, dependentVariable));
+			}
+		}
+	}
+
+	/**
+	 * A pending data dependence edge
+	 */
+	private static class Dependence {
+		private final Node fromStatement;
+		private final Node toStatement;
+		private final String kind; // the additional edge tag or null for a plain data dependence
+		private final String name;
+		private final String dependentVariable;
+
+		private Dependence(Node fromStatement, Node toStatement, String kind, String name, String dependentVariable) {
+			this.fromStatement = fromStatement;
+			this.toStatement = toStatement;
+			this.kind = kind;
+			this.name = name;
+			this.dependentVariable = dependentVariable;
+		}
 	}
 
 	public static Q getPointersContained(Q variables) {
@@ -0,0 +1,110 @@
+package com.se421.dataflow.dependence;
+
+import java.util.BitSet;
+import java.util.HashMap;
+
+import com.ensoftcorp.atlas.core.db.graph.Edge;
+import com.ensoftcorp.atlas.core.db.graph.Graph;
+import com.ensoftcorp.atlas.core.db.graph.GraphElement.NodeDirection;
+import com.ensoftcorp.atlas.core.db.graph.Node;
+
+/**
+ * A local lookup index of the dependence edges (edges with a given tag)
+ * between pairs of statements.
+ *
+ * Each statement is assigned a local integer id and an edge is keyed by the
+ * ids of its endpoints. The existing edges into a statement are read from the
+ * universe graph the first time the statement is looked up, so the cost of
+ * building a dependence graph is proportional to the statements it touches
+ * instead of to the number of dependence edges in the universe.
+ */
+class DependenceEdgeIndex {
+
+	private final String tag;
+	private final HashMap<Node,Integer> ids = new HashMap<Node,Integer>();
+	private final BitSet seeded = new BitSet();
+	private final HashMap<Long,Edge> edges = new HashMap<Long,Edge>();
+
+	/**
+	 * @param tag the tag of the indexed edges
+	 */
+	DependenceEdgeIndex(String tag) {
+		this.tag = tag;
+	}
+
+	/**
+	 * Returns an edge with the indexed tag from the given statement to the
+	 * given statement or null if no such edge exists
+	 * @param from
+	 * @param to
+	 * @return
+	 */
+	Edge get(Node from, Node to) {
+		seed(to);
+		return edges.get(getKey(from, to));
+	}
+
+	/**
+	 * Adds a newly created edge to the index
+	 * @param edge
+	 */
+	void add(Edge edge) {
+		seed(edge.to());
+		Long key = getKey(edge.from(), edge.to());
+		if(!edges.containsKey(key)) {
+			edges.put(key, edge);
+		}
+	}
+
+	/**
+	 * Removes an edge that no longer has the indexed tag from the index, if
+	 * there is another edge between the same statements it takes its place
+	 * @param edge
+	 */
+	void remove(Edge edge) {
+		Long key = getKey(edge.from(), edge.to());
+		if(edge.equals(edges.get(key))) {
+			edges.remove(key);
+			for(Edge inEdge : Graph.U.edges(edge.to(), NodeDirection.IN)) {
+				if(!inEdge.equals(edge) && inEdge.taggedWith(tag) && inEdge.from().equals(edge.from())) {
+					edges.put(key, inEdge);
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Indexes the existing edges into the given statement once
+	 * @param to
+	 */
+	private void seed(Node to) {
+		int id = getId(to);
+		if(seeded.get(id)) {
+			return;
+		}
+		seeded.set(id);
+		for(Edge inEdge : Graph.U.edges(to, NodeDirection.IN)) {
+			if(inEdge.taggedWith(tag)) {
+				Long key = getKey(inEdge.from(), to);
+				if(!edges.containsKey(key)) {
+					edges.put(key, inEdge);
+				}
+			}
+		}
+	}
+
+	private Long getKey(Node from, Node to) {
+		return (((long) getId(from)) << 32) | (getId(to) & 0xFFFFFFFFL);
+	}
+
+	private int getId(Node node) {
+		Integer id = ids.get(node);
+		if(id == null) {
+			id = ids.size();
+			ids.put(node, id);
+		}
+		return id;
+	}
+
+}
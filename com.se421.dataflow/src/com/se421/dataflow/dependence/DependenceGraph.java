@@ -1,5 +1,16 @@
 package com.se421.dataflow.dependence;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.ensoftcorp.atlas.core.db.graph.Graph;
 import com.ensoftcorp.atlas.core.db.graph.Node;
 import com.ensoftcorp.atlas.core.db.set.AtlasHashSet;
 import com.ensoftcorp.atlas.core.db.set.AtlasSet;
@@ -7,6 +18,9 @@ import com.ensoftcorp.atlas.core.query.Q;
 import com.ensoftcorp.atlas.core.query.Query;
 import com.ensoftcorp.atlas.core.script.Common;
 import com.ensoftcorp.atlas.core.xcsg.XCSG;
+import com.se421.dataflow.log.Log;
+import com.se421.dataflow.support.ContainmentIndex;
+import com.se421.dataflow.support.SetDefinitions;
 
 public abstract class DependenceGraph {
 
@@ -19,23 +33,40 @@ public abstract class DependenceGraph {
 		}
 	}
 	
+	// the compiled dependence graph, created on the first slice
+	private volatile DependenceSlicer slicer = null;
+	
 	public abstract Q getGraph();
 	
+	/**
+	 * Returns the slice of the dependence graph from the statements of the given criteria
+	 * 
+	 * The dependence graph is compiled for slicing on the first request and
+	 * the slices of recently used criteria are cached (see DependenceSlicer).
+	 * @param direction
+	 * @param criteria
+	 * @return
+	 */
 	public Q getSlice(SliceDirection direction, AtlasSet<Node> criteria) {
-		Q dependenceGraph = getGraph();
-		Q slice = Common.empty();
-		
-		Q statements = Common.toQ(getStatements(criteria));
-		
-		if(direction == SliceDirection.REVERSE || direction == SliceDirection.BI_DIRECTIONAL){
-			slice = slice.union(dependenceGraph.reverse(statements));
-		} 
-		
-		if(direction == SliceDirection.FORWARD || direction == SliceDirection.BI_DIRECTIONAL){
-			slice = slice.union(dependenceGraph.forward(statements));
+		return getSlicer().getSlice(direction, getStatements(criteria));
+	}
+	
+	/**
+	 * Returns the compiled slicer of this dependence graph
+	 * @return
+	 */
+	public DependenceSlicer getSlicer() {
+		DependenceSlicer slicer = this.slicer;
+		if(slicer == null) {
+			synchronized (this) {
+				slicer = this.slicer;
+				if(slicer == null) {
+					slicer = new DependenceSlicer(getGraph());
+					this.slicer = slicer;
+				}
+			}
 		}
-		
-		return slice;
+		return slicer;
 	}
 	
 	/**
@@ -60,6 +91,10 @@ public abstract class DependenceGraph {
 	 * Returns the control flow node for the corresponding data flow node
 	 */
 	public static Node getStatement(Node dataFlowNode){
+		ContainmentIndex index = ContainmentIndex.getIndex(dataFlowNode);
+		if(index != null && index.contains(dataFlowNode)){
+			return index.getParent(dataFlowNode);
+		}
 		return Common.toQ(dataFlowNode).parent().eval().nodes().one();
 	}
 	
@@ -71,13 +106,93 @@ public abstract class DependenceGraph {
 		 * @return
 		 */
 		public static DataDependenceGraph buildDDG(Node function){
+			return new DataDependenceGraph(getDataFlowGraph(function));
+		}
+
+		/**
+		 * Returns the intra-procedural Data Dependence Graphs (DDGs) of every
+		 * application function, using one worker thread per available processor
+		 * @return
+		 */
+		public static Map<Node,DataDependenceGraph> buildDDGs(){
+			return buildDDGs(SetDefinitions.app().nodes(XCSG.Function), Runtime.getRuntime().availableProcessors());
+		}
+
+		/**
+		 * Returns the intra-procedural Data Dependence Graphs (DDGs) of the given functions
+		 * 
+		 * The dependences of each function are computed in parallel on the given
+		 * number of worker threads without modifying the universe graph. Once
+		 * every function has been computed the dependence edges are committed
+		 * to the universe graph by the calling thread in a single batch.
+		 * 
+		 * Example Atlas Shell Usage:
+		 * DependenceGraph.Factory.buildDDGs(SetDefinitions.app().nodes(XCSG.Function), 8)
+		 * 
+		 * @param functions
+		 * @param threads
+		 * @return the DDGs in function order, functions that could not be computed are omitted
+		 */
+		public static Map<Node,DataDependenceGraph> buildDDGs(Q functions, int threads){
+			if(threads < 1) {
+				throw new IllegalArgumentException("At least one thread is required.");
+			}
+			Map<Node,DataDependenceGraph> ddgs = new LinkedHashMap<Node,DataDependenceGraph>();
+			List<Node> submittedFunctions = new ArrayList<Node>();
+			List<Future<DataDependenceGraph.Dependences>> dependences = new ArrayList<Future<DataDependenceGraph.Dependences>>();
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			try {
+				// compute the dependences of each function into a private buffer
+				for(final Node function : functions.nodes(XCSG.Function).eval().nodes()) {
+					submittedFunctions.add(function);
+					dependences.add(executor.submit(new Callable<DataDependenceGraph.Dependences>() {
+						@Override
+						public DataDependenceGraph.Dependences call() throws Exception {
+							return DataDependenceGraph.computeDependences(getDataFlowGraph(function));
+						}
+					}));
+				}
+
+				// wait for every worker before writing to the universe graph
+				List<DataDependenceGraph.Dependences> computedDependences = new ArrayList<DataDependenceGraph.Dependences>();
+				for(int i=0; i<dependences.size(); i++) {
+					try {
+						computedDependences.add(dependences.get(i).get());
+					} catch (ExecutionException e) {
+						Log.error("Unable to compute the data dependences of " + submittedFunctions.get(i).getAttr(XCSG.name), e.getCause());
+						computedDependences.add(null);
+					}
+				}
+
+				// commit the dependence edges, the edge index is shared so each statement's edges are only read once
+				DependenceEdgeIndex dataDependenceEdgeIndex = new DependenceEdgeIndex(DataDependenceGraph.DATA_DEPENDENCE_EDGE);
+				for(int i=0; i<computedDependences.size(); i++) {
+					if(computedDependences.get(i) != null) {
+						ddgs.put(submittedFunctions.get(i), new DataDependenceGraph(computedDependences.get(i), dataDependenceEdgeIndex));
+					}
+				}
+			} catch (InterruptedException e) {
+				Log.error("Building the data dependence graphs was interrupted", e);
+				Thread.currentThread().interrupt();
+			} finally {
+				executor.shutdownNow();
+			}
+			return ddgs;
+		}
+
+		/**
+		 * Returns the local data flow graph of the given function, including
+		 * its parameters, identity and return values
+		 * @param function
+		 * @return
+		 */
+		private static Graph getDataFlowGraph(Node function){
 			Q localDataFlowEdges = Query.universe().edges(XCSG.LocalDataFlow);
 			Q localDFG = Common.toQ(function).contained().nodes(XCSG.DataFlow_Node).induce(localDataFlowEdges);
 			Q dfg = Common.toQ(localDFG.eval());
 			dfg = localDataFlowEdges.reverseStep(dfg); // get parameters, identity
 			dfg = localDataFlowEdges.forwardStep(dfg); // get return values
-			DataDependenceGraph ddg = new DataDependenceGraph(dfg.eval());
-			return ddg;
+			return dfg.eval();
 		}
 		
 	}
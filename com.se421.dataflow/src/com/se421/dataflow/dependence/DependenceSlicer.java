@@ -0,0 +1,272 @@
+package com.se421.dataflow.dependence;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.ensoftcorp.atlas.core.db.graph.Edge;
+import com.ensoftcorp.atlas.core.db.graph.Graph;
+import com.ensoftcorp.atlas.core.db.graph.Node;
+import com.ensoftcorp.atlas.core.db.set.AtlasHashSet;
+import com.ensoftcorp.atlas.core.db.set.AtlasSet;
+import com.ensoftcorp.atlas.core.query.Q;
+import com.ensoftcorp.atlas.core.script.Common;
+import com.se421.dataflow.dependence.DependenceGraph.SliceDirection;
+import com.se421.dataflow.support.ParallelTraversal;
+
+/**
+ * Answers slices of a dependence graph from a compiled copy of the graph.
+ *
+ * The dependence graph is compiled once into primitive (compressed sparse
+ * row) successor and predecessor arrays. A slice is the breadth first search
+ * of the arrays from the criteria statements, with the visited statements
+ * recorded in a bit set, so no Atlas traversals are run per slice. The
+ * slices of the most recently used criteria are cached.
+ */
+public class DependenceSlicer {
+
+	public static final int DEFAULT_CAPACITY = 256;
+
+	// graphs with at least this many statements are searched in parallel
+	public static final int PARALLEL_THRESHOLD = 1 << 16;
+
+	// note: traversals run on the shared worker pool, so no threads are started per slice
+	private static final ParallelTraversal parallelTraversal = new ParallelTraversal(Runtime.getRuntime().availableProcessors());
+
+	private final Node[] nodes;
+	private final Edge[] edges;
+	private final HashMap<Node,Integer> ids;
+
+	// successors of node i are successorTargets[successorOffsets[i]] to successorTargets[successorOffsets[i+1]-1]
+	private final int[] successorOffsets;
+	private final int[] successorTargets;
+	private final int[] successorEdges;
+
+	// predecessors of node i are predecessorSources[predecessorOffsets[i]] to predecessorSources[predecessorOffsets[i+1]-1]
+	private final int[] predecessorOffsets;
+	private final int[] predecessorSources;
+	private final int[] predecessorEdges;
+
+	private int capacity = DEFAULT_CAPACITY;
+
+	private final LinkedHashMap<SliceKey,Q> slices = new LinkedHashMap<SliceKey,Q>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<SliceKey,Q> eldest) {
+			return size() > capacity;
+		}
+	};
+
+	/**
+	 * Compiles the given dependence graph
+	 * @param dependenceGraph
+	 */
+	public DependenceSlicer(Q dependenceGraph) {
+		Graph graph = dependenceGraph.eval();
+		this.ids = new HashMap<Node,Integer>();
+		this.nodes = new Node[(int) graph.nodes().size()];
+		int size = 0;
+		for(Node node : graph.nodes()) {
+			ids.put(node, size);
+			nodes[size++] = node;
+		}
+
+		this.edges = new Edge[(int) graph.edges().size()];
+		int[] sources = new int[edges.length];
+		int[] targets = new int[edges.length];
+		int edgeCount = 0;
+		for(Edge edge : graph.edges()) {
+			Integer source = ids.get(edge.from());
+			Integer target = ids.get(edge.to());
+			if(source == null || target == null) {
+				continue;
+			}
+			edges[edgeCount] = edge;
+			sources[edgeCount] = source;
+			targets[edgeCount] = target;
+			edgeCount++;
+		}
+
+		this.successorOffsets = new int[size + 1];
+		this.successorTargets = new int[edgeCount];
+		this.successorEdges = new int[edgeCount];
+		compile(size, edgeCount, sources, targets, successorOffsets, successorTargets, successorEdges);
+
+		this.predecessorOffsets = new int[size + 1];
+		this.predecessorSources = new int[edgeCount];
+		this.predecessorEdges = new int[edgeCount];
+		compile(size, edgeCount, targets, sources, predecessorOffsets, predecessorSources, predecessorEdges);
+	}
+
+	/**
+	 * Counting sort of the edges by their from node into compressed sparse row arrays
+	 */
+	private static void compile(int size, int edgeCount, int[] from, int[] to, int[] offsets, int[] adjacent, int[] adjacentEdges) {
+		for(int e=0; e<edgeCount; e++) {
+			offsets[from[e] + 1]++;
+		}
+		for(int i=0; i<size; i++) {
+			offsets[i + 1] += offsets[i];
+		}
+		int[] next = Arrays.copyOf(offsets, size);
+		for(int e=0; e<edgeCount; e++) {
+			int position = next[from[e]]++;
+			adjacent[position] = to[e];
+			adjacentEdges[position] = e;
+		}
+	}
+
+	/**
+	 * Returns the slice of the dependence graph from the given statements,
+	 * criteria that are not in the dependence graph are ignored
+	 * @param direction
+	 * @param statements
+	 * @return
+	 */
+	public Q getSlice(SliceDirection direction, AtlasSet<Node> statements) {
+		BitSet origins = new BitSet(nodes.length);
+		for(Node statement : statements) {
+			Integer id = ids.get(statement);
+			if(id != null) {
+				origins.set(id);
+			}
+		}
+		SliceKey key = new SliceKey(direction, origins);
+		synchronized (slices) {
+			Q slice = slices.get(key);
+			if(slice != null) {
+				return slice;
+			}
+		}
+
+		BitSet sliceEdges = new BitSet(edges.length);
+		BitSet sliceNodes = new BitSet(nodes.length);
+		sliceNodes.or(origins);
+		if(direction == SliceDirection.REVERSE || direction == SliceDirection.BI_DIRECTIONAL){
+			search(origins, predecessorOffsets, predecessorSources, predecessorEdges, successorOffsets, successorTargets, sliceNodes, sliceEdges);
+		}
+		if(direction == SliceDirection.FORWARD || direction == SliceDirection.BI_DIRECTIONAL){
+			search(origins, successorOffsets, successorTargets, successorEdges, predecessorOffsets, predecessorSources, sliceNodes, sliceEdges);
+		}
+
+		AtlasSet<Node> sliceNodeSet = new AtlasHashSet<Node>();
+		for(int id = sliceNodes.nextSetBit(0); id >= 0; id = sliceNodes.nextSetBit(id + 1)) {
+			sliceNodeSet.add(nodes[id]);
+		}
+		AtlasSet<Edge> sliceEdgeSet = new AtlasHashSet<Edge>();
+		for(int e = sliceEdges.nextSetBit(0); e >= 0; e = sliceEdges.nextSetBit(e + 1)) {
+			sliceEdgeSet.add(edges[e]);
+		}
+		Q slice = Common.toQ(sliceNodeSet).union(Common.toQ(sliceEdgeSet));
+
+		synchronized (slices) {
+			slices.put(key, slice);
+		}
+		return slice;
+	}
+
+	/**
+	 * Breadth first search from the origins along the given adjacency arrays,
+	 * adds the reached nodes and the traversed edges to the slice. Large
+	 * graphs are searched in parallel (see ParallelTraversal).
+	 */
+	private void search(BitSet origins, int[] offsets, int[] adjacent, int[] adjacentEdges, int[] reverseOffsets, int[] reverseAdjacent, BitSet sliceNodes, BitSet sliceEdges) {
+		if(nodes.length >= PARALLEL_THRESHOLD) {
+			int[] originIds = new int[origins.cardinality()];
+			int size = 0;
+			for(int id = origins.nextSetBit(0); id >= 0; id = origins.nextSetBit(id + 1)) {
+				originIds[size++] = id;
+			}
+			BitSet reached = parallelTraversal.traverse(nodes.length, offsets, adjacent, reverseOffsets, reverseAdjacent, originIds, null);
+			for(int node = reached.nextSetBit(0); node >= 0; node = reached.nextSetBit(node + 1)) {
+				for(int position=offsets[node]; position<offsets[node + 1]; position++) {
+					sliceEdges.set(adjacentEdges[position]);
+				}
+			}
+			sliceNodes.or(reached);
+			return;
+		}
+
+		BitSet visited = new BitSet(nodes.length);
+		visited.or(origins);
+		int[] queue = new int[nodes.length];
+		int head = 0;
+		int tail = 0;
+		for(int id = origins.nextSetBit(0); id >= 0; id = origins.nextSetBit(id + 1)) {
+			queue[tail++] = id;
+		}
+		while(head < tail) {
+			int node = queue[head++];
+			for(int position=offsets[node]; position<offsets[node + 1]; position++) {
+				sliceEdges.set(adjacentEdges[position]);
+				int next = adjacent[position];
+				if(!visited.get(next)) {
+					visited.set(next);
+					queue[tail++] = next;
+				}
+			}
+		}
+		sliceNodes.or(visited);
+	}
+
+	/**
+	 * Sets the maximum number of cached slices
+	 * @param capacity
+	 */
+	public void setCapacity(int capacity) {
+		if(capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be positive.");
+		}
+		synchronized (slices) {
+			this.capacity = capacity;
+			while(slices.size() > capacity) {
+				slices.remove(slices.keySet().iterator().next());
+			}
+		}
+	}
+
+	/**
+	 * Clears the cached slices
+	 */
+	public void clearCache() {
+		synchronized (slices) {
+			slices.clear();
+		}
+	}
+
+	/**
+	 * Returns the number of statements in the compiled dependence graph
+	 * @return
+	 */
+	public int size() {
+		return nodes.length;
+	}
+
+	private static class SliceKey {
+		private final SliceDirection direction;
+		private final BitSet origins;
+
+		private SliceKey(SliceDirection direction, BitSet origins) {
+			this.direction = direction;
+			this.origins = origins;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * direction.hashCode() + origins.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			if(!(object instanceof SliceKey)) {
+				return false;
+			}
+			SliceKey other = (SliceKey) object;
+			return direction == other.direction && origins.equals(other.origins);
+		}
+	}
+
+}
@@ -0,0 +1,267 @@
+package com.se421.dataflow.support;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.ensoftcorp.atlas.core.db.graph.Edge;
+import com.ensoftcorp.atlas.core.db.graph.Graph;
+import com.ensoftcorp.atlas.core.db.graph.Node;
+import com.ensoftcorp.atlas.core.db.graph.UncheckedGraph;
+import com.ensoftcorp.atlas.core.db.set.AtlasHashSet;
+import com.ensoftcorp.atlas.core.db.set.AtlasSet;
+import com.ensoftcorp.atlas.core.script.Common;
+import com.ensoftcorp.atlas.core.script.CommonQueries.TraversalDirection;
+import com.ensoftcorp.atlas.core.xcsg.XCSG;
+
+/**
+ * A compressed sparse row (CSR) index of the data flow edges
+ * (XCSG.DataFlow_Edge) of the universe graph for forward and reverse data
+ * flow traversals.
+ *
+ * The index is built once per Atlas index and held until the cache is
+ * cleared (the plugin activator clears it whenever the index changes). A
+ * traversal uses an int work queue and a visited bit set, so its cost is
+ * proportional to the reached subgraph instead of to the universe.
+ */
+public class DataFlowIndex {
+
+	private static volatile DataFlowIndex instance = null;
+
+	private final HashMap<Node,Integer> ids;
+	private final Node[] nodes;
+	private final Edge[] edges;
+
+	// the outgoing edges of node i are outEdges[outOffsets[i]] to outEdges[outOffsets[i+1]-1]
+	private final int[] outOffsets;
+	private final int[] outEdges;
+
+	// the incoming edges of node i are inEdges[inOffsets[i]] to inEdges[inOffsets[i+1]-1]
+	private final int[] inOffsets;
+	private final int[] inEdges;
+
+	// the from and to node of each edge
+	private final int[] sources;
+	private final int[] targets;
+
+	// the successor and predecessor nodes in the order of outEdges and inEdges, used by parallel traversals
+	private final int[] successors;
+	private final int[] predecessors;
+
+	private DataFlowIndex(AtlasSet<Edge> dataFlowEdges) {
+		this.ids = new HashMap<Node,Integer>();
+		this.edges = new Edge[(int) dataFlowEdges.size()];
+		this.sources = new int[edges.length];
+		this.targets = new int[edges.length];
+		int edgeCount = 0;
+		for(Edge edge : dataFlowEdges) {
+			edges[edgeCount] = edge;
+			sources[edgeCount] = getOrCreateId(edge.from());
+			targets[edgeCount] = getOrCreateId(edge.to());
+			edgeCount++;
+		}
+		this.nodes = new Node[ids.size()];
+		for(Map.Entry<Node,Integer> entry : ids.entrySet()) {
+			nodes[entry.getValue()] = entry.getKey();
+		}
+
+		this.outOffsets = new int[nodes.length + 1];
+		this.outEdges = new int[edgeCount];
+		compile(nodes.length, edgeCount, sources, outOffsets, outEdges);
+		this.inOffsets = new int[nodes.length + 1];
+		this.inEdges = new int[edgeCount];
+		compile(nodes.length, edgeCount, targets, inOffsets, inEdges);
+
+		this.successors = new int[edgeCount];
+		this.predecessors = new int[edgeCount];
+		for(int position=0; position<edgeCount; position++) {
+			successors[position] = targets[outEdges[position]];
+			predecessors[position] = sources[inEdges[position]];
+		}
+	}
+
+	private int getOrCreateId(Node node) {
+		Integer id = ids.get(node);
+		if(id == null) {
+			id = ids.size();
+			ids.put(node, id);
+		}
+		return id;
+	}
+
+	/**
+	 * Counting sort of the edges by the given endpoint into compressed sparse row arrays
+	 */
+	private static void compile(int size, int edgeCount, int[] endpoints, int[] offsets, int[] adjacentEdges) {
+		for(int e=0; e<edgeCount; e++) {
+			offsets[endpoints[e] + 1]++;
+		}
+		for(int i=0; i<size; i++) {
+			offsets[i + 1] += offsets[i];
+		}
+		int[] next = Arrays.copyOf(offsets, size);
+		for(int e=0; e<edgeCount; e++) {
+			adjacentEdges[next[endpoints[e]]++] = e;
+		}
+	}
+
+	/**
+	 * Returns the data flow index of the current Atlas index, building it if necessary
+	 * @return
+	 */
+	public static DataFlowIndex getInstance() {
+		DataFlowIndex index = instance;
+		if(index == null) {
+			synchronized (DataFlowIndex.class) {
+				index = instance;
+				if(index == null) {
+					index = new DataFlowIndex(Common.universe().edgesTaggedWithAny(XCSG.DataFlow_Edge).eval().edges());
+					instance = index;
+				}
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Clears the cached index, this must be done if the Atlas index changes
+	 */
+	public static void clearCache() {
+		synchronized (DataFlowIndex.class) {
+			instance = null;
+		}
+	}
+
+	/**
+	 * Selects the data flow subgraph reachable from the origin nodes in the
+	 * given direction
+	 *
+	 * @param direction FORWARD or REVERSE
+	 * @param origin possible starting nodes, nodes without data flow edges are ignored
+	 * @param stop nodes at which to stop traversal if encountered; such nodes are included in the result
+	 * @return
+	 */
+	public Graph traverse(TraversalDirection direction, AtlasSet<Node> origin, AtlasSet<Node> stop) {
+		boolean reverse = (direction == TraversalDirection.REVERSE);
+		int[] offsets = reverse ? inOffsets : outOffsets;
+		int[] adjacentEdges = reverse ? inEdges : outEdges;
+		int[] adjacentNodes = reverse ? sources : targets;
+
+		AtlasSet<Node> nodesInGraph = new AtlasHashSet<Node>();
+		AtlasSet<Edge> edgesInGraph = new AtlasHashSet<Edge>();
+
+		BitSet visited = new BitSet();
+		int[] queue = new int[16];
+		int head = 0;
+		int tail = 0;
+		for(Node node : origin) {
+			Integer id = ids.get(node);
+			if(id != null && !visited.get(id)) {
+				visited.set(id);
+				if(tail == queue.length) {
+					queue = Arrays.copyOf(queue, tail * 2);
+				}
+				queue[tail++] = id;
+			}
+		}
+
+		while(head < tail) {
+			int current = queue[head++];
+			Node currentNode = nodes[current];
+			nodesInGraph.add(currentNode);
+			if(stop.contains(currentNode)) {
+				continue;
+			}
+			for(int position=offsets[current]; position<offsets[current + 1]; position++) {
+				int edge = adjacentEdges[position];
+				edgesInGraph.add(edges[edge]);
+				int next = adjacentNodes[edge];
+				if(!visited.get(next)) {
+					visited.set(next);
+					if(tail == queue.length) {
+						queue = Arrays.copyOf(queue, tail * 2);
+					}
+					queue[tail++] = next;
+				}
+			}
+		}
+
+		return new UncheckedGraph(nodesInGraph, edgesInGraph);
+	}
+
+	/**
+	 * Selects the data flow subgraph reachable from the origin nodes in the
+	 * given direction with a parallel breadth first search (see
+	 * ParallelTraversal), the result is the same as the sequential traversal
+	 *
+	 * @param direction FORWARD or REVERSE
+	 * @param origin possible starting nodes, nodes without data flow edges are ignored
+	 * @param stop nodes at which to stop traversal if encountered; such nodes are included in the result
+	 * @param threads the number of worker threads
+	 * @return
+	 */
+	public Graph traverse(TraversalDirection direction, AtlasSet<Node> origin, AtlasSet<Node> stop, int threads) {
+		boolean reverse = (direction == TraversalDirection.REVERSE);
+		int[] offsets = reverse ? inOffsets : outOffsets;
+		int[] adjacentEdges = reverse ? inEdges : outEdges;
+
+		int[] origins = getIds(origin);
+		BitSet stopSet = new BitSet(nodes.length);
+		for(int id : getIds(stop)) {
+			stopSet.set(id);
+		}
+		BitSet reached = new ParallelTraversal(threads).traverse(nodes.length,
+				reverse ? inOffsets : outOffsets, reverse ? predecessors : successors,
+				reverse ? outOffsets : inOffsets, reverse ? successors : predecessors,
+				origins, stopSet);
+
+		// every edge leaving an expanded node is part of the result
+		AtlasSet<Node> nodesInGraph = new AtlasHashSet<Node>();
+		AtlasSet<Edge> edgesInGraph = new AtlasHashSet<Edge>();
+		for(int id = reached.nextSetBit(0); id >= 0; id = reached.nextSetBit(id + 1)) {
+			nodesInGraph.add(nodes[id]);
+			if(stopSet.get(id)) {
+				continue;
+			}
+			for(int position=offsets[id]; position<offsets[id + 1]; position++) {
+				edgesInGraph.add(edges[adjacentEdges[position]]);
+			}
+		}
+		return new UncheckedGraph(nodesInGraph, edgesInGraph);
+	}
+
+	/**
+	 * Returns the ids of the given nodes that have data flow edges
+	 * @param nodes
+	 * @return
+	 */
+	private int[] getIds(AtlasSet<Node> nodes) {
+		int[] result = new int[(int) nodes.size()];
+		int size = 0;
+		for(Node node : nodes) {
+			Integer id = ids.get(node);
+			if(id != null) {
+				result[size++] = id;
+			}
+		}
+		return Arrays.copyOf(result, size);
+	}
+
+	/**
+	 * Returns the number of nodes with data flow edges
+	 * @return
+	 */
+	public int size() {
+		return nodes.length;
+	}
+
+	/**
+	 * Returns the number of data flow edges
+	 * @return
+	 */
+	public int edgeCount() {
+		return edges.length;
+	}
+
+}
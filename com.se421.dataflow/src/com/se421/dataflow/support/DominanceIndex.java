@@ -0,0 +1,447 @@
+package com.se421.dataflow.support;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.ensoftcorp.atlas.core.db.graph.Edge;
+import com.ensoftcorp.atlas.core.db.graph.Graph;
+import com.ensoftcorp.atlas.core.db.graph.Node;
+import com.ensoftcorp.atlas.core.db.set.AtlasHashSet;
+import com.ensoftcorp.atlas.core.db.set.AtlasSet;
+import com.ensoftcorp.atlas.core.query.Q;
+import com.ensoftcorp.atlas.core.xcsg.XCSG;
+
+/**
+ * The dominator and post-dominator trees of the control flow graph of a
+ * function.
+ *
+ * Both trees are computed with the iterative algorithm of Cooper, Harvey and
+ * Kennedy ("A Simple, Fast Dominance Algorithm") over primitive adjacency
+ * arrays. The post-dominator tree is rooted at a virtual exit node that
+ * succeeds every exit of the control flow graph, where an exit is a node
+ * without successors once the loop back edges are removed. Each tree is
+ * numbered in depth first order so that dominance is an ancestor test in
+ * constant time.
+ *
+ * Indexes are held in a bounded cache keyed by the function, the cache must
+ * be cleared whenever the Atlas index changes (the plugin activator takes
+ * care of this).
+ */
+public class DominanceIndex {
+
+	public static final int DEFAULT_CAPACITY = 256;
+
+	private static final int UNDEFINED = -1;
+
+	private static int capacity = DEFAULT_CAPACITY;
+
+	private static final LinkedHashMap<String,DominanceIndex> cache = new LinkedHashMap<String,DominanceIndex>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String,DominanceIndex> eldest) {
+			return size() > capacity;
+		}
+	};
+
+	private final Node[] nodes;
+	private final HashMap<Node,Integer> ids;
+
+	// immediate dominators and post-dominators, UNDEFINED if a node is not reachable from the root (or cannot reach an exit)
+	private final int[] dominators;
+	private final int[] postDominators;
+
+	// the depth first entry and exit numbers of each node in the dominator and post-dominator trees
+	private final int[] dominatorEntries;
+	private final int[] dominatorExits;
+	private final int[] postDominatorEntries;
+	private final int[] postDominatorExits;
+
+	/**
+	 * Computes the dominance relations of the given control flow graph
+	 * @param nodes the nodes of the control flow graph
+	 * @param sources the from node of each edge
+	 * @param targets the to node of each edge
+	 * @param backEdges true if the edge is a loop back edge
+	 * @param edgeCount
+	 * @param root the entry node
+	 */
+	DominanceIndex(Node[] nodes, int[] sources, int[] targets, boolean[] backEdges, int edgeCount, int root) {
+		this.nodes = nodes;
+		this.ids = new HashMap<Node,Integer>();
+		for(int id=0; id<nodes.length; id++) {
+			ids.put(nodes[id], id);
+		}
+
+		// the exits are the nodes without forward edges, they are joined by a virtual exit node
+		int size = nodes.length;
+		int exit = size;
+		boolean[] hasForwardEdge = new boolean[size];
+		for(int e=0; e<edgeCount; e++) {
+			if(!backEdges[e]) {
+				hasForwardEdge[sources[e]] = true;
+			}
+		}
+		int[] augmentedSources = Arrays.copyOf(sources, edgeCount + size);
+		int[] augmentedTargets = Arrays.copyOf(targets, edgeCount + size);
+		int augmentedEdgeCount = edgeCount;
+		for(int id=0; id<size; id++) {
+			if(!hasForwardEdge[id]) {
+				augmentedSources[augmentedEdgeCount] = id;
+				augmentedTargets[augmentedEdgeCount] = exit;
+				augmentedEdgeCount++;
+			}
+		}
+		if(augmentedEdgeCount == edgeCount) {
+			throw new RuntimeException("Control flow graph does not have any exits.");
+		}
+
+		int[] successorOffsets = new int[size + 2];
+		int[] successors = new int[augmentedEdgeCount];
+		compile(size + 1, augmentedEdgeCount, augmentedSources, augmentedTargets, successorOffsets, successors);
+		int[] predecessorOffsets = new int[size + 2];
+		int[] predecessors = new int[augmentedEdgeCount];
+		compile(size + 1, augmentedEdgeCount, augmentedTargets, augmentedSources, predecessorOffsets, predecessors);
+
+		this.dominators = computeDominators(size + 1, successorOffsets, successors, predecessorOffsets, predecessors, root);
+		this.postDominators = computeDominators(size + 1, predecessorOffsets, predecessors, successorOffsets, successors, exit);
+
+		this.dominatorEntries = new int[size + 1];
+		this.dominatorExits = new int[size + 1];
+		number(dominators, root, dominatorEntries, dominatorExits);
+		this.postDominatorEntries = new int[size + 1];
+		this.postDominatorExits = new int[size + 1];
+		number(postDominators, exit, postDominatorEntries, postDominatorExits);
+	}
+
+	/**
+	 * Returns the (possibly cached) dominance index of the control flow
+	 * graph of the given function
+	 * @param function
+	 * @param includeExceptionalPaths if true the exceptional control flow graph is used
+	 * @return
+	 */
+	public static DominanceIndex getIndex(Node function, boolean includeExceptionalPaths) {
+		String key = function.address().toAddressString() + (includeExceptionalPaths ? ":excfg" : ":cfg");
+		synchronized (cache) {
+			DominanceIndex index = cache.get(key);
+			if(index != null) {
+				return index;
+			}
+		}
+
+		// index outside of the lock so that different functions can be indexed concurrently
+		DominanceIndex index = build(function, includeExceptionalPaths);
+		synchronized (cache) {
+			cache.put(key, index);
+		}
+		return index;
+	}
+
+	private static DominanceIndex build(Node function, boolean includeExceptionalPaths) {
+		Q cfg = includeExceptionalPaths ? HelperQueries.excfg(function) : HelperQueries.cfg(function);
+		AtlasSet<Node> roots = cfg.roots().eval().nodes();
+		if(roots.size() != 1){
+			throw new RuntimeException("Function " + function.getAttr(XCSG.name) + " must only have one control flow root.");
+		}
+		Graph graph = cfg.eval();
+		Node[] nodes = new Node[(int) graph.nodes().size()];
+		HashMap<Node,Integer> ids = new HashMap<Node,Integer>();
+		for(Node node : graph.nodes()) {
+			ids.put(node, ids.size());
+			nodes[ids.size() - 1] = node;
+		}
+		int edgeCount = (int) graph.edges().size();
+		int[] sources = new int[edgeCount];
+		int[] targets = new int[edgeCount];
+		boolean[] backEdges = new boolean[edgeCount];
+		int e = 0;
+		for(Edge edge : graph.edges()) {
+			sources[e] = ids.get(edge.from());
+			targets[e] = ids.get(edge.to());
+			backEdges[e] = edge.taggedWith(XCSG.ControlFlowBackEdge);
+			e++;
+		}
+		return new DominanceIndex(nodes, sources, targets, backEdges, edgeCount, ids.get(roots.one()));
+	}
+
+	/**
+	 * Counting sort of the edges by their from node into compressed sparse row arrays
+	 */
+	private static void compile(int size, int edgeCount, int[] from, int[] to, int[] offsets, int[] adjacent) {
+		for(int e=0; e<edgeCount; e++) {
+			offsets[from[e] + 1]++;
+		}
+		for(int i=0; i<size; i++) {
+			offsets[i + 1] += offsets[i];
+		}
+		int[] next = Arrays.copyOf(offsets, size);
+		for(int e=0; e<edgeCount; e++) {
+			adjacent[next[from[e]]++] = to[e];
+		}
+	}
+
+	/**
+	 * Computes the immediate dominators of the graph given by the successor
+	 * and predecessor arrays with the Cooper, Harvey and Kennedy algorithm
+	 * @return the immediate dominator of each node, the start is its own
+	 *         immediate dominator and unreachable nodes are UNDEFINED
+	 */
+	private static int[] computeDominators(int size, int[] successorOffsets, int[] successors, int[] predecessorOffsets, int[] predecessors, int start) {
+		// number the reachable nodes in post order with an iterative depth first search
+		int[] postOrder = new int[size];
+		Arrays.fill(postOrder, UNDEFINED);
+		int[] reversePostOrder = new int[size];
+		int reachable = 0;
+		boolean[] visited = new boolean[size];
+		int[] stack = new int[size];
+		int[] positions = new int[size];
+		int top = 0;
+		stack[top] = start;
+		positions[top] = successorOffsets[start];
+		visited[start] = true;
+		while(top >= 0) {
+			int node = stack[top];
+			if(positions[top] < successorOffsets[node + 1]) {
+				int successor = successors[positions[top]++];
+				if(!visited[successor]) {
+					visited[successor] = true;
+					top++;
+					stack[top] = successor;
+					positions[top] = successorOffsets[successor];
+				}
+			} else {
+				postOrder[node] = reachable++;
+				top--;
+			}
+		}
+		for(int node=0; node<size; node++) {
+			if(postOrder[node] != UNDEFINED) {
+				reversePostOrder[reachable - 1 - postOrder[node]] = node;
+			}
+		}
+
+		int[] dominators = new int[size];
+		Arrays.fill(dominators, UNDEFINED);
+		dominators[start] = start;
+		boolean changed = true;
+		while(changed) {
+			changed = false;
+			for(int i=1; i<reachable; i++) {
+				int node = reversePostOrder[i];
+				int dominator = UNDEFINED;
+				for(int p=predecessorOffsets[node]; p<predecessorOffsets[node + 1]; p++) {
+					int predecessor = predecessors[p];
+					if(dominators[predecessor] == UNDEFINED) {
+						continue;
+					}
+					if(dominator == UNDEFINED) {
+						dominator = predecessor;
+					} else {
+						// intersect the dominators of the processed predecessors
+						int finger1 = predecessor;
+						int finger2 = dominator;
+						while(finger1 != finger2) {
+							while(postOrder[finger1] < postOrder[finger2]) {
+								finger1 = dominators[finger1];
+							}
+							while(postOrder[finger2] < postOrder[finger1]) {
+								finger2 = dominators[finger2];
+							}
+						}
+						dominator = finger1;
+					}
+				}
+				if(dominators[node] != dominator) {
+					dominators[node] = dominator;
+					changed = true;
+				}
+			}
+		}
+		return dominators;
+	}
+
+	/**
+	 * Numbers the nodes of the given tree in depth first order
+	 * @param parents the parent of each node, the root is its own parent
+	 * @param root
+	 * @param entries the entry number of each node
+	 * @param exits the exit number of each node
+	 */
+	private static void number(int[] parents, int root, int[] entries, int[] exits) {
+		int size = parents.length;
+		int[] childOffsets = new int[size + 1];
+		for(int node=0; node<size; node++) {
+			if(node != root && parents[node] != UNDEFINED) {
+				childOffsets[parents[node] + 1]++;
+			}
+		}
+		for(int i=0; i<size; i++) {
+			childOffsets[i + 1] += childOffsets[i];
+		}
+		int[] children = new int[size];
+		int[] next = Arrays.copyOf(childOffsets, size);
+		for(int node=0; node<size; node++) {
+			if(node != root && parents[node] != UNDEFINED) {
+				children[next[parents[node]]++] = node;
+			}
+		}
+
+		Arrays.fill(entries, UNDEFINED);
+		Arrays.fill(exits, UNDEFINED);
+		int counter = 0;
+		int[] stack = new int[size];
+		int[] positions = new int[size];
+		int top = 0;
+		stack[top] = root;
+		positions[top] = childOffsets[root];
+		entries[root] = counter++;
+		while(top >= 0) {
+			int node = stack[top];
+			if(positions[top] < childOffsets[node + 1]) {
+				int child = children[positions[top]++];
+				entries[child] = counter++;
+				top++;
+				stack[top] = child;
+				positions[top] = childOffsets[child];
+			} else {
+				exits[node] = counter++;
+				top--;
+			}
+		}
+	}
+
+	private int getId(Node node) {
+		Integer id = ids.get(node);
+		if(id == null) {
+			throw new IllegalArgumentException("Node is not in the control flow graph.");
+		}
+		return id;
+	}
+
+	/**
+	 * Returns true if the given dominator dominates the given node, that is
+	 * every path from the root to the node passes through the dominator. A
+	 * node dominates itself and every node dominates an unreachable node.
+	 * @param dominator
+	 * @param node
+	 * @return
+	 */
+	public boolean dominates(Node dominator, Node node) {
+		return isAncestor(getId(dominator), getId(node), dominatorEntries, dominatorExits);
+	}
+
+	/**
+	 * Returns true if the given post-dominator post-dominates the given node,
+	 * that is every path from the node to an exit passes through the
+	 * post-dominator. A node post-dominates itself and every node
+	 * post-dominates a node that cannot reach an exit.
+	 * @param postDominator
+	 * @param node
+	 * @return
+	 */
+	public boolean postDominates(Node postDominator, Node node) {
+		return isAncestor(getId(postDominator), getId(node), postDominatorEntries, postDominatorExits);
+	}
+
+	private static boolean isAncestor(int ancestor, int node, int[] entries, int[] exits) {
+		if(entries[node] == UNDEFINED) {
+			// there are no paths to the node, so the relation holds vacuously
+			return true;
+		}
+		return entries[ancestor] != UNDEFINED && entries[ancestor] <= entries[node] && exits[node] <= exits[ancestor];
+	}
+
+	/**
+	 * Returns the immediate dominator of the given node or null if the node
+	 * is the root or is not reachable from the root
+	 * @param node
+	 * @return
+	 */
+	public Node getImmediateDominator(Node node) {
+		int id = getId(node);
+		int dominator = dominators[id];
+		return (dominator == UNDEFINED || dominator == id) ? null : nodes[dominator];
+	}
+
+	/**
+	 * Returns the immediate post-dominator of the given node or null if the
+	 * node is only post-dominated by the virtual exit or cannot reach an exit
+	 * @param node
+	 * @return
+	 */
+	public Node getImmediatePostDominator(Node node) {
+		int postDominator = postDominators[getId(node)];
+		return (postDominator == UNDEFINED || postDominator == nodes.length) ? null : nodes[postDominator];
+	}
+
+	/**
+	 * Returns true if the given branch governs whether or not the given event
+	 * could be executed, that is the branch dominates the event and there is
+	 * a path from the branch to an exit that does not pass through the event
+	 * @param branch
+	 * @param event
+	 * @return
+	 */
+	public boolean isGoverningBranch(Node branch, Node event) {
+		return dominates(branch, event) && !postDominates(event, branch);
+	}
+
+	/**
+	 * Returns the branches (XCSG.ControlFlowCondition nodes) that govern the
+	 * given event, found by walking up the dominator tree of the event
+	 * @param event
+	 * @return
+	 */
+	public AtlasSet<Node> getGoverningBranches(Node event) {
+		AtlasSet<Node> governingBranches = new AtlasHashSet<Node>();
+		int id = getId(event);
+		if(dominatorEntries[id] == UNDEFINED) {
+			// every branch dominates an unreachable event
+			for(Node branch : nodes) {
+				if(branch.taggedWith(XCSG.ControlFlowCondition) && !postDominates(event, branch)) {
+					governingBranches.add(branch);
+				}
+			}
+			return governingBranches;
+		}
+		while(true) {
+			Node dominator = nodes[id];
+			if(dominator.taggedWith(XCSG.ControlFlowCondition) && !postDominates(event, dominator)) {
+				governingBranches.add(dominator);
+			}
+			if(dominators[id] == id) {
+				return governingBranches;
+			}
+			id = dominators[id];
+		}
+	}
+
+	/**
+	 * Clears the cached dominance indexes
+	 */
+	public static void clearCache() {
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+
+	/**
+	 * Sets the maximum number of cached dominance indexes
+	 * @param capacity
+	 */
+	public static void setCapacity(int capacity) {
+		if(capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be positive.");
+		}
+		synchronized (cache) {
+			DominanceIndex.capacity = capacity;
+			while(cache.size() > capacity) {
+				cache.remove(cache.keySet().iterator().next());
+			}
+		}
+	}
+
+}
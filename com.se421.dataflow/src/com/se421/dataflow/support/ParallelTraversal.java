@@ -0,0 +1,302 @@
+package com.se421.dataflow.support;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A parallel, level synchronous breadth first search over a graph given as
+ * compressed sparse row (CSR) adjacency arrays.
+ *
+ * Each level of the search is split into stripes that are expanded by a pool
+ * of worker threads. Every stripe collects the next frontier in its own
+ * bucket and the nodes are claimed through an atomic visited bit set, so the
+ * workers do not share any other state. The search is direction optimizing
+ * (Beamer et al.): while the frontier is small each frontier node pushes to
+ * its successors (top down), once the edges leaving the frontier outnumber a
+ * fraction of the unexplored edges each unvisited node instead pulls from
+ * its predecessors and stops at the first one in the frontier (bottom up),
+ * and it switches back when the frontier shrinks.
+ *
+ * The stripes run on a shared pool of daemon worker threads that is created
+ * on first use and kept for the life of the plugin, so a traversal does not
+ * pay for starting threads. A caller may instead supply its own executor.
+ * Note: a traversal must not be started from a task of the executor it runs
+ * on, since it waits for its stripes to complete.
+ */
+public class ParallelTraversal {
+
+	// switch to bottom up once the frontier edges exceed 1/ALPHA of the unexplored edges
+	private static final int ALPHA = 14;
+
+	// switch back to top down once the frontier has less than 1/BETA of the nodes
+	private static final int BETA = 24;
+
+	// the number of stripes per thread, more stripes balance skewed frontiers
+	private static final int STRIPES_PER_THREAD = 4;
+
+	// frontiers smaller than this are expanded by the calling thread
+	private static final int MIN_PARALLEL_FRONTIER = 1024;
+
+	private static volatile ExecutorService sharedExecutor = null;
+
+	private final int threads;
+	private final ExecutorService executor;
+
+	/**
+	 * Creates a traversal that runs on the shared worker pool
+	 * @param threads the number of worker threads
+	 */
+	public ParallelTraversal(int threads) {
+		this(threads, null);
+	}
+
+	/**
+	 * Creates a traversal that runs on the given executor
+	 * @param threads the number of worker threads
+	 * @param executor the executor running the stripes or null to use the shared worker pool
+	 */
+	public ParallelTraversal(int threads, ExecutorService executor) {
+		if(threads < 1) {
+			throw new IllegalArgumentException("At least one thread is required.");
+		}
+		this.threads = threads;
+		this.executor = executor;
+	}
+
+	/**
+	 * Returns the shared pool of daemon worker threads, creating it if necessary
+	 * @return
+	 */
+	private static ExecutorService getSharedExecutor() {
+		ExecutorService executor = sharedExecutor;
+		if(executor == null) {
+			synchronized (ParallelTraversal.class) {
+				executor = sharedExecutor;
+				if(executor == null) {
+					executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+						private int count = 0;
+
+						@Override
+						public synchronized Thread newThread(Runnable runnable) {
+							Thread thread = new Thread(runnable, "ParallelTraversal-" + (count++));
+							// daemon threads do not keep the platform from shutting down
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+					sharedExecutor = executor;
+				}
+			}
+		}
+		return executor;
+	}
+
+	/**
+	 * Returns the nodes reachable from the origins
+	 *
+	 * @param size the number of nodes
+	 * @param offsets the successors of node i are adjacent[offsets[i]] to adjacent[offsets[i+1]-1]
+	 * @param adjacent
+	 * @param reverseOffsets the predecessors of node i are reverseAdjacent[reverseOffsets[i]] to reverseAdjacent[reverseOffsets[i+1]-1]
+	 * @param reverseAdjacent
+	 * @param origins the starting nodes
+	 * @param stop nodes that are not expanded if reached, may be null
+	 * @return the reached nodes, including the origins
+	 */
+	public BitSet traverse(final int size, final int[] offsets, final int[] adjacent, final int[] reverseOffsets, final int[] reverseAdjacent,
+			int[] origins, final BitSet stop) {
+		final AtomicLongArray visited = new AtomicLongArray((size + 63) >>> 6);
+		int[] frontier = new int[origins.length];
+		int frontierSize = 0;
+		for(int origin : origins) {
+			if(visit(visited, origin) && (stop == null || !stop.get(origin))) {
+				frontier[frontierSize++] = origin;
+			}
+		}
+
+		ExecutorService executor = null;
+		if(threads > 1) {
+			executor = (this.executor != null) ? this.executor : getSharedExecutor();
+		}
+		long unexploredEdges = adjacent.length;
+		boolean bottomUp = false;
+		while(frontierSize > 0) {
+			long frontierEdges = 0;
+			for(int i=0; i<frontierSize; i++) {
+				frontierEdges += offsets[frontier[i] + 1] - offsets[frontier[i]];
+			}
+			if(!bottomUp && frontierEdges > unexploredEdges / ALPHA) {
+				bottomUp = true;
+			} else if(bottomUp && frontierSize < size / BETA) {
+				bottomUp = false;
+			}
+			unexploredEdges -= frontierEdges;
+
+			List<Callable<int[]>> stripes = new ArrayList<Callable<int[]>>();
+			int stripeCount = (executor == null || frontierSize < MIN_PARALLEL_FRONTIER) ? 1 : threads * STRIPES_PER_THREAD;
+			if(bottomUp) {
+				final BitSet frontierSet = new BitSet(size);
+				for(int i=0; i<frontierSize; i++) {
+					frontierSet.set(frontier[i]);
+				}
+				// stripes are aligned to the words of the visited bit set
+				int words = (size + 63) >>> 6;
+				int wordsPerStripe = (words + stripeCount - 1) / stripeCount;
+				for(int word=0; word<words; word+=wordsPerStripe) {
+					final int start = word << 6;
+					final int end = Math.min(size, (word + wordsPerStripe) << 6);
+					stripes.add(new Callable<int[]>() {
+						@Override
+						public int[] call() throws Exception {
+							return pull(start, end, reverseOffsets, reverseAdjacent, frontierSet, visited, stop);
+						}
+					});
+				}
+			} else {
+				final int[] currentFrontier = frontier;
+				int nodesPerStripe = (frontierSize + stripeCount - 1) / stripeCount;
+				for(int first=0; first<frontierSize; first+=nodesPerStripe) {
+					final int start = first;
+					final int end = Math.min(frontierSize, first + nodesPerStripe);
+					stripes.add(new Callable<int[]>() {
+						@Override
+						public int[] call() throws Exception {
+							return push(currentFrontier, start, end, offsets, adjacent, visited, stop);
+						}
+					});
+				}
+			}
+
+			// concatenate the buckets of the stripes into the next frontier
+			List<int[]> buckets = run(executor, stripes);
+			int nextSize = 0;
+			for(int[] bucket : buckets) {
+				nextSize += bucket[0];
+			}
+			int[] next = new int[nextSize];
+			int position = 0;
+			for(int[] bucket : buckets) {
+				System.arraycopy(bucket, 1, next, position, bucket[0]);
+				position += bucket[0];
+			}
+			frontier = next;
+			frontierSize = nextSize;
+		}
+
+		BitSet reached = new BitSet(size);
+		for(int word=0; word<visited.length(); word++) {
+			long bits = visited.get(word);
+			while(bits != 0) {
+				reached.set((word << 6) + Long.numberOfTrailingZeros(bits));
+				bits &= bits - 1;
+			}
+		}
+		return reached;
+	}
+
+	/**
+	 * Top down expansion of the given part of the frontier
+	 * @return the bucket of newly reached expandable nodes, the first element is the bucket size
+	 */
+	private static int[] push(int[] frontier, int start, int end, int[] offsets, int[] adjacent, AtomicLongArray visited, BitSet stop) {
+		int[] bucket = new int[16];
+		int size = 0;
+		for(int i=start; i<end; i++) {
+			int node = frontier[i];
+			for(int position=offsets[node]; position<offsets[node + 1]; position++) {
+				int next = adjacent[position];
+				if(visit(visited, next) && (stop == null || !stop.get(next))) {
+					if(size + 1 == bucket.length) {
+						bucket = Arrays.copyOf(bucket, bucket.length * 2);
+					}
+					bucket[++size] = next;
+				}
+			}
+		}
+		bucket[0] = size;
+		return bucket;
+	}
+
+	/**
+	 * Bottom up expansion of the unvisited nodes in the given range
+	 * @return the bucket of newly reached expandable nodes, the first element is the bucket size
+	 */
+	private static int[] pull(int start, int end, int[] reverseOffsets, int[] reverseAdjacent, BitSet frontier, AtomicLongArray visited, BitSet stop) {
+		int[] bucket = new int[16];
+		int size = 0;
+		for(int node=start; node<end; node++) {
+			if(isVisited(visited, node)) {
+				continue;
+			}
+			for(int position=reverseOffsets[node]; position<reverseOffsets[node + 1]; position++) {
+				if(frontier.get(reverseAdjacent[position])) {
+					visit(visited, node);
+					if(stop == null || !stop.get(node)) {
+						if(size + 1 == bucket.length) {
+							bucket = Arrays.copyOf(bucket, bucket.length * 2);
+						}
+						bucket[++size] = node;
+					}
+					break;
+				}
+			}
+		}
+		bucket[0] = size;
+		return bucket;
+	}
+
+	private static List<int[]> run(ExecutorService executor, List<Callable<int[]>> stripes) {
+		List<int[]> buckets = new ArrayList<int[]>(stripes.size());
+		try {
+			if(executor == null || stripes.size() == 1) {
+				for(Callable<int[]> stripe : stripes) {
+					buckets.add(stripe.call());
+				}
+			} else {
+				for(Future<int[]> bucket : executor.invokeAll(stripes)) {
+					buckets.add(bucket.get());
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Traversal was interrupted", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+		return buckets;
+	}
+
+	/**
+	 * Atomically marks the given node as visited
+	 * @return true if the node was not already visited
+	 */
+	private static boolean visit(AtomicLongArray visited, int node) {
+		int word = node >>> 6;
+		long bit = 1L << node;
+		while(true) {
+			long bits = visited.get(word);
+			if((bits & bit) != 0) {
+				return false;
+			}
+			if(visited.compareAndSet(word, bits, bits | bit)) {
+				return true;
+			}
+		}
+	}
+
+	private static boolean isVisited(AtomicLongArray visited, int node) {
+		return (visited.get(node >>> 6) & (1L << node)) != 0;
+	}
+
+}
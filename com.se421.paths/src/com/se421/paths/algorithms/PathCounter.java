@@ -1,6 +1,9 @@
 package com.se421.paths.algorithms;
 
+import java.math.BigInteger;
+
 import com.ensoftcorp.atlas.core.query.Q;
+import com.se421.paths.graph.PathGraph;
 
 /**
  * A common interface of program path counting algorithms
@@ -16,30 +19,76 @@ public abstract class PathCounter {
 	 */
 	public abstract CountingResult countPaths(Q cfg);
 
+	/**
+	 * Counts the number of paths in a given graph, the graph is made acyclic
+	 * with a DAGTransform if it has back edges
+	 * @param cfg
+	 * @return
+	 */
+	public abstract CountingResult countPaths(PathGraph cfg);
+
 	/**
 	 * Holds a path counting result, which consists of the number of paths counted
 	 * and the number of additions performed to compute the result.
+	 * 
+	 * Path counts that do not fit in a long are only produced by arbitrary
+	 * precision counting modes and are kept as a BigInteger.
 	 */
 	public static class CountingResult {
 		private long additions = 0L;
 		private long paths = 0L;
+		private BigInteger exactPaths = null;
 
 		public CountingResult(long additions, long paths) {
 			this.additions = additions;
 			this.paths = paths;
 		}
+		
+		public CountingResult(long additions, BigInteger paths) {
+			this.additions = additions;
+			if(paths.bitLength() < Long.SIZE) {
+				this.paths = paths.longValue();
+			} else {
+				this.paths = Long.MAX_VALUE;
+				this.exactPaths = paths;
+			}
+		}
 
 		public long getAdditions() {
 			return additions;
 		}
 
+		/**
+		 * Returns the number of paths, or Long.MAX_VALUE if the exact number
+		 * of paths does not fit in a long (see getExactPaths)
+		 * @return
+		 */
 		public long getPaths() {
 			return paths;
 		}
+		
+		/**
+		 * Returns the number of paths as an arbitrary precision integer
+		 * @return
+		 */
+		public BigInteger getExactPaths() {
+			if(exactPaths != null) {
+				return exactPaths;
+			}
+			return BigInteger.valueOf(paths);
+		}
+		
+		/**
+		 * Returns true if the number of paths does not fit in a long
+		 * @return
+		 */
+		public boolean isOverflowed() {
+			return exactPaths != null;
+		}
 
 		@Override
 		public String toString() {
-			return "Result [additions=" + additions + ", paths=" + paths + "]";
+			return "Result [additions=" + additions + ", paths=" + getExactPaths() + "]";
 		}
 	}
 
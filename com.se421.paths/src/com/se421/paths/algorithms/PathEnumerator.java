@@ -1,12 +1,16 @@
 package com.se421.paths.algorithms;
 
-import java.io.IOException;
+import java.io.Serializable;
+import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import com.ensoftcorp.atlas.core.db.graph.Node;
-import com.ensoftcorp.atlas.core.index.common.SourceCorrespondence;
 import com.ensoftcorp.atlas.core.query.Q;
-import com.ensoftcorp.atlas.core.xcsg.XCSG;
+import com.se421.paths.algorithms.counting.BallLarusNumbering;
+import com.se421.paths.algorithms.counting.MultiplicitiesPathCounter;
+import com.se421.paths.graph.PathGraph;
 import com.se421.paths.support.FormattedSourceCorrespondence;
 
 public abstract class PathEnumerator extends PathCounter {
@@ -15,34 +19,403 @@ public abstract class PathEnumerator extends PathCounter {
 	
 	public abstract EnumerationResult enumeratePaths(Q cfg);
 	
-	private Long getCSourceLineNumber(Node node) {
-		long lineNumber = -1;
-		if (node.hasAttr(XCSG.sourceCorrespondence)) {
-			SourceCorrespondence sc = (SourceCorrespondence) node.getAttr(XCSG.sourceCorrespondence);
-			if (sc != null) {
-				lineNumber = sc.startLine;
-			}
+	/**
+	 * Enumerates each path in the given CFG, passing each path to the visitor
+	 * as a sequence of line numbers as soon as it is discovered. Paths are not
+	 * retained, so memory use is bounded by the length of the longest path.
+	 * 
+	 * @param cfg
+	 * @param visitor
+	 * @return the number of paths visited
+	 */
+	public abstract long enumeratePaths(Q cfg, PathVisitor visitor);
+	
+	/**
+	 * Enumerates each path in the given graph, passing each path to the visitor
+	 * as a sequence of line numbers as soon as it is discovered. The graph is
+	 * made acyclic with a DAGTransform if it has back edges.
+	 * 
+	 * @param cfg
+	 * @param visitor
+	 * @return the number of paths visited
+	 */
+	public abstract long enumeratePaths(PathGraph cfg, PathVisitor visitor);
+	
+	/**
+	 * Enumerates at most limit paths in the given CFG, passing each path to
+	 * the visitor as soon as it is discovered.
+	 * 
+	 * Example Atlas Shell Usage:
+	 * var dskqoptCFG = cfg(functions("dskqopt"))
+	 * var enumerator = new DFSPathEnumerator
+	 * enumerator.enumeratePaths(dskqoptCFG, 10, new PathEnumerator.PathVisitor {
+	 *   def visit(path: Array[Long], length: Int) = { println(path.take(length).mkString(", ")); true }
+	 * })
+	 * 
+	 * @param cfg
+	 * @param limit
+	 * @param visitor
+	 * @return the number of paths visited
+	 */
+	public long enumeratePaths(Q cfg, final long limit, final PathVisitor visitor) {
+		if(limit <= 0) {
+			return 0;
 		}
-		return lineNumber;
+		return enumeratePaths(cfg, new PathVisitor() {
+			private long visited = 0;
+			
+			@Override
+			public boolean visit(long[] path, int length) {
+				visited++;
+				return visitor.visit(path, length) && visited < limit;
+			}
+		});
+	}
+	
+	/**
+	 * Enumerates a page of at most pageSize paths of the given CFG starting at
+	 * the given cursor, passing null starts at the first path. The paths are
+	 * returned in the same order as the depth first enumeration and the page
+	 * holds the cursor of the next page, which can be turned into a token to
+	 * resume the enumeration later (for example in another session).
+	 * 
+	 * Example Atlas Shell Usage:
+	 * var dskenqCFG = cfg(functions("dskenq"))
+	 * var enumerator = new DFSPathEnumerator
+	 * var page = enumerator.enumeratePaths(dskenqCFG, null, 1000)
+	 * var token = page.getNextCursor().toToken()
+	 * enumerator.enumeratePaths(dskenqCFG, PathEnumerator.PathCursor.fromToken(token), 1000)
+	 * 
+	 * @param cfg
+	 * @param cursor the position of the first path of the page or null
+	 * @param pageSize the maximum number of paths in the page
+	 * @return
+	 */
+	public PathPage enumeratePaths(Q cfg, PathCursor cursor, int pageSize) {
+		return enumeratePaths(new MultiplicitiesPathCounter().numberPaths(cfg), cursor, pageSize);
 	}
+	
+	/**
+	 * Enumerates a page of at most pageSize paths of the given graph starting
+	 * at the given cursor, the graph is made acyclic with a DAGTransform if it
+	 * has back edges
+	 * 
+	 * @param cfg
+	 * @param cursor the position of the first path of the page or null
+	 * @param pageSize the maximum number of paths in the page
+	 * @return
+	 */
+	public PathPage enumeratePaths(PathGraph cfg, PathCursor cursor, int pageSize) {
+		return enumeratePaths(new MultiplicitiesPathCounter().numberPaths(cfg), cursor, pageSize);
+	}
+	
+	/**
+	 * Enumerates a page of paths of the given path numbering
+	 * 
+	 * A cursor is the rank (Ball-Larus path id) of the next path. The first
+	 * path of the page is decoded from the rank, which restores the depth
+	 * first search stack of that path, and the search continues from there, so
+	 * a page costs time proportional to its own size and earlier pages are
+	 * never walked again.
+	 * 
+	 * @param numbering
+	 * @param cursor the position of the first path of the page or null
+	 * @param pageSize the maximum number of paths in the page
+	 * @return
+	 */
+	public static PathPage enumeratePaths(BallLarusNumbering numbering, PathCursor cursor, int pageSize) {
+		if(pageSize < 1) {
+			throw new IllegalArgumentException("The page size must be positive.");
+		}
+		BigInteger pathCount = numbering.getPathCount();
+		BigInteger start = BigInteger.ZERO;
+		if(cursor != null) {
+			if(!cursor.getPathCount().equals(pathCount)) {
+				throw new IllegalArgumentException("The cursor was created for a different graph.");
+			}
+			start = cursor.getRank();
+		}
+		if(start.compareTo(pathCount) >= 0) {
+			// there are no (more) paths
+			return new PathPage(start, new ArrayList<List<Long>>(), null);
+		}
+		List<List<Long>> paths = new ArrayList<List<Long>>(pathCount.subtract(start).min(BigInteger.valueOf(pageSize)).intValue());
 
+		// restore the search stack of the first path of the page
+		// nextEdges[i] is the index of the next outgoing edge of path node i to explore
+		PathGraph dag = numbering.getDAG();
+		int[] pathNodes = new int[dag.size()];
+		int[] nextEdges = new int[dag.size()];
+		long[] path = new long[dag.size()];
+		int[] edges = numbering.decodeEdges(start);
+		int depth = 0;
+		pathNodes[0] = numbering.getRoot();
+		path[0] = dag.getLineNumber(pathNodes[0]);
+		for(int edge : edges) {
+			nextEdges[depth] = edge + 1;
+			pathNodes[depth + 1] = dag.successor(pathNodes[depth], edge);
+			depth++;
+			path[depth] = dag.getLineNumber(pathNodes[depth]);
+			nextEdges[depth] = 0;
+		}
+		paths.add(toList(path, depth + 1));
+		depth--;
+
+		while(depth >= 0 && paths.size() < pageSize) {
+			int node = pathNodes[depth];
+			if(nextEdges[depth] == dag.outDegree(node)) {
+				// all paths through this node have been explored, backtrack
+				depth--;
+				continue;
+			}
+
+			// extend the path along the next outgoing edge
+			int successor = dag.successor(node, nextEdges[depth]++);
+			depth++;
+			pathNodes[depth] = successor;
+			nextEdges[depth] = 0;
+			path[depth] = dag.getLineNumber(successor);
+
+			if(dag.isLeaf(successor)) {
+				paths.add(toList(path, depth + 1));
+				depth--;
+			}
+		}
+
+		BigInteger next = start.add(BigInteger.valueOf(paths.size()));
+		PathCursor nextCursor = next.compareTo(pathCount) < 0 ? new PathCursor(next, pathCount) : null;
+		return new PathPage(start, paths, nextCursor);
+	}
+	
+	private static List<Long> toList(long[] path, int length) {
+		List<Long> lineNumbers = new ArrayList<Long>(length);
+		for(int i=0; i<length; i++) {
+			lineNumbers.add(path[i]);
+		}
+		return lineNumbers;
+	}
+	
+	/**
+	 * Draws k root to leaf paths of the given CFG uniformly at random (with
+	 * replacement) and returns each path as a list of line numbers, in the
+	 * same representation as enumeratePaths(cfg). The same seed always draws
+	 * the same paths.
+	 * 
+	 * Example Atlas Shell Usage:
+	 * var dskqoptCFG = cfg(functions("dskqopt"))
+	 * var enumerator = new DFSPathEnumerator
+	 * enumerator.samplePaths(dskqoptCFG, 100, 421L)
+	 * 
+	 * @param cfg
+	 * @param k the number of paths to draw
+	 * @param seed
+	 * @return
+	 */
+	public EnumerationResult samplePaths(Q cfg, int k, long seed) {
+		return samplePaths(new MultiplicitiesPathCounter().numberPaths(cfg), k, new Random(seed));
+	}
+	
+	/**
+	 * Draws k root to leaf paths of the given graph uniformly at random (with
+	 * replacement), the graph is made acyclic with a DAGTransform if it has
+	 * back edges
+	 * 
+	 * @param cfg
+	 * @param k the number of paths to draw
+	 * @param seed
+	 * @return
+	 */
+	public EnumerationResult samplePaths(PathGraph cfg, int k, long seed) {
+		return samplePaths(new MultiplicitiesPathCounter().numberPaths(cfg), k, new Random(seed));
+	}
+	
+	/**
+	 * Draws k paths uniformly at random from the given path numbering
+	 * 
+	 * Each draw picks a path id uniformly from [0, path count) and decodes it,
+	 * so a draw costs time proportional to the length of the drawn path
+	 * regardless of the number of paths. Since the path multiplicities weight
+	 * each branch by the number of paths below it, every path is equally
+	 * likely, which is not the case for a random walk of the graph.
+	 * 
+	 * @param numbering
+	 * @param k the number of paths to draw
+	 * @param random
+	 * @return
+	 */
+	public static EnumerationResult samplePaths(BallLarusNumbering numbering, int k, Random random) {
+		if(k < 0) {
+			throw new IllegalArgumentException("The number of paths must not be negative.");
+		}
+		List<List<Long>> paths = new ArrayList<List<Long>>(k);
+		BigInteger pathCount = numbering.getPathCount();
+		if(pathCount.signum() == 0) {
+			// function is empty, there are no paths
+			return new EnumerationResult(new CountingResult(0, 0), paths);
+		}
+		for(int i=0; i<k; i++) {
+			int[] path;
+			if(numbering.isOverflowed()) {
+				// rejection sampling, each attempt succeeds with a probability of at least 1/2
+				BigInteger pathId;
+				do {
+					pathId = new BigInteger(pathCount.bitLength(), random);
+				} while(pathId.compareTo(pathCount) >= 0);
+				path = numbering.decode(pathId);
+			} else {
+				path = numbering.decode(nextLong(random, pathCount.longValue()));
+			}
+			paths.add(toList(numbering.getLineNumbers(path), path.length));
+		}
+		return new EnumerationResult(new CountingResult(paths.size(), paths.size()), paths);
+	}
+	
+	/**
+	 * Returns a uniformly distributed long in [0, bound)
+	 */
+	private static long nextLong(Random random, long bound) {
+		long bits;
+		long value;
+		do {
+			bits = random.nextLong() >>> 1;
+			value = bits % bound;
+		} while(bits - value + (bound - 1) < 0);
+		return value;
+	}
+	
 	/**
 	 * Returns the starting line of the given node or -1 if the node does not have a
 	 * source correspondence
 	 */
 	protected Long getLineNumber(Node node) {
-		if(node.taggedWith(XCSG.Language.C) || node.taggedWith(XCSG.Language.CPP)) {
-			return getCSourceLineNumber(node);
-		} else {
-			long line = -1;
-			if (node.hasAttr(XCSG.sourceCorrespondence) && node.getAttr(XCSG.sourceCorrespondence) != null) {
-				try {
-					line = FormattedSourceCorrespondence.getSourceCorrespondent(node).getStartLineNumber();
-				} catch (IOException e) {
-					line = -1;
-				}
+		return FormattedSourceCorrespondence.getStartLineNumber(node);
+	}
+	
+	/**
+	 * A callback for streaming path enumeration
+	 */
+	public static interface PathVisitor {
+		
+		/**
+		 * Visits an enumerated path. The path buffer is reused between calls,
+		 * only path[0..length) is valid and it must be copied if it is retained.
+		 * 
+		 * @param path the line numbers of the path
+		 * @param length the number of nodes on the path
+		 * @return true to continue enumerating, false to stop the enumeration
+		 */
+		public boolean visit(long[] path, int length);
+		
+	}
+	
+	/**
+	 * A resumable position in the enumeration of the paths of a graph
+	 * 
+	 * A cursor holds the rank of the next path and the number of paths of the
+	 * graph it was created for (to detect cursors used with another graph).
+	 * It can be serialized or converted to and from an opaque token string.
+	 */
+	public static class PathCursor implements Serializable {
+		private static final long serialVersionUID = 1L;
+		
+		private static final String TOKEN_SEPARATOR = "-";
+		
+		private final BigInteger rank;
+		private final BigInteger pathCount;
+		
+		public PathCursor(BigInteger rank, BigInteger pathCount) {
+			this.rank = rank;
+			this.pathCount = pathCount;
+		}
+		
+		/**
+		 * Returns the rank of the next path
+		 * @return
+		 */
+		public BigInteger getRank() {
+			return rank;
+		}
+		
+		/**
+		 * Returns the number of paths of the graph
+		 * @return
+		 */
+		public BigInteger getPathCount() {
+			return pathCount;
+		}
+		
+		/**
+		 * Returns an opaque token for this cursor
+		 * @return
+		 */
+		public String toToken() {
+			return rank.toString(Character.MAX_RADIX) + TOKEN_SEPARATOR + pathCount.toString(Character.MAX_RADIX);
+		}
+		
+		/**
+		 * Returns the cursor of the given token
+		 * @param token
+		 * @return
+		 */
+		public static PathCursor fromToken(String token) {
+			String[] parts = token.split(TOKEN_SEPARATOR);
+			if(parts.length != 2) {
+				throw new IllegalArgumentException("Invalid cursor token: " + token);
 			}
-			return line;
+			try {
+				return new PathCursor(new BigInteger(parts[0], Character.MAX_RADIX), new BigInteger(parts[1], Character.MAX_RADIX));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid cursor token: " + token, e);
+			}
+		}
+		
+		@Override
+		public String toString() {
+			return toToken();
+		}
+	}
+	
+	/**
+	 * Holds a page of enumerated paths and the cursor of the next page
+	 */
+	public static class PathPage {
+		private BigInteger start;
+		private List<List<Long>> paths;
+		private PathCursor nextCursor;
+		
+		public PathPage(BigInteger start, List<List<Long>> paths, PathCursor nextCursor) {
+			this.start = start;
+			this.paths = paths;
+			this.nextCursor = nextCursor;
+		}
+		
+		/**
+		 * Returns the rank of the first path of the page
+		 * @return
+		 */
+		public BigInteger getStart() {
+			return start;
+		}
+		
+		public List<List<Long>> getPaths() {
+			return paths;
+		}
+		
+		/**
+		 * Returns the cursor of the next page or null if this is the last page
+		 * @return
+		 */
+		public PathCursor getNextCursor() {
+			return nextCursor;
+		}
+		
+		public boolean hasNext() {
+			return nextCursor != null;
+		}
+		
+		@Override
+		public String toString() {
+			return paths.toString().replace("], [", "]\n[").replace("[[", "[").replace("]]", "]");
 		}
 	}
 	
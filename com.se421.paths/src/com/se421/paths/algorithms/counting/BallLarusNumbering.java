@@ -0,0 +1,354 @@
+package com.se421.paths.algorithms.counting;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import com.se421.paths.graph.PathGraph;
+import com.se421.paths.transforms.DAGTransform;
+
+/**
+ * A Ball-Larus numbering of the root to leaf paths of a graph (Ball and
+ * Larus, "Efficient Path Profiling").
+ *
+ * Every edge of the DAG is assigned an increment so that the sum of the
+ * increments along a path from the root to a leaf is a unique path id in
+ * [0, getPathCount()). The increment of the i'th outgoing edge of a node is
+ * the number of paths starting at the node's earlier outgoing edges, so the
+ * paths are numbered in the same (depth first) order in which the
+ * DFSPathEnumerator visits them.
+ *
+ * A path can be decoded from its id without enumerating any other paths:
+ * starting at the root, the decoder follows the outgoing edge with the
+ * largest increment that does not exceed the remaining id. Since the
+ * increments of a node are sorted this takes time proportional to the
+ * length of the path (times the log of the out degree).
+ *
+ * Path counts are kept in long arithmetic unless a count overflows, in which
+ * case the numbering is computed with BigInteger arithmetic instead.
+ *
+ * Example Atlas Shell Usage:
+ * var dskqoptCFG = cfg(functions("dskqopt"))
+ * var numbering = new MultiplicitiesPathCounter().numberPaths(dskqoptCFG)
+ * numbering.getLineNumbers(numbering.decode(numbering.getPathCount().subtract(BigInteger.ONE)))
+ */
+public class BallLarusNumbering {
+
+	private final PathGraph dag;
+	private final int root;
+
+	// the increments of the outgoing edges of node i are increments[offsets[i]] to increments[offsets[i+1]-1]
+	private final int[] offsets;
+
+	// the number of paths from each node to a leaf and the edge increments, exactPathCounts
+	// and exactIncrements are only used (and pathCounts and increments are null) if a count overflows a long
+	private long[] pathCounts;
+	private long[] increments;
+	private BigInteger[] exactPathCounts;
+	private BigInteger[] exactIncrements;
+
+	/**
+	 * Numbers the paths of the given graph, the graph is made acyclic with a
+	 * DAGTransform if it has back edges
+	 * @param cfg
+	 */
+	public BallLarusNumbering(PathGraph cfg) {
+		this.dag = new DAGTransform().transform(cfg);
+		int[] dagRoots = dag.roots();
+		this.root = dagRoots.length == 0 ? -1 : dagRoots[0];
+
+		int size = dag.size();
+		this.offsets = new int[size + 1];
+		for(int node=0; node<size; node++) {
+			offsets[node + 1] = offsets[node] + dag.outDegree(node);
+		}
+
+		int[] order = reverseTopologicalOrder();
+		try {
+			number(order);
+		} catch (ArithmeticException overflow) {
+			pathCounts = null;
+			increments = null;
+			numberExact(order);
+		}
+	}
+
+	/**
+	 * Returns the nodes in an order in which every node comes after all of its successors
+	 * @return
+	 */
+	private int[] reverseTopologicalOrder() {
+		int size = dag.size();
+		int[] triggers = new int[size];
+		for(int node=0; node<size; node++) {
+			triggers[node] = dag.inDegree(node);
+		}
+		int[] worklist = new int[size];
+		int head = 0;
+		int tail = 0;
+		for(int dagRoot : dag.roots()) {
+			worklist[tail++] = dagRoot;
+		}
+		while(head < tail) {
+			int node = worklist[head++];
+			for(int i=0; i<dag.outDegree(node); i++) {
+				int successor = dag.successor(node, i);
+				if(--triggers[successor] == 0) {
+					worklist[tail++] = successor;
+				}
+			}
+		}
+		int[] order = new int[tail];
+		for(int i=0; i<tail; i++) {
+			order[i] = worklist[tail - 1 - i];
+		}
+		return order;
+	}
+
+	private void number(int[] order) {
+		pathCounts = new long[dag.size()];
+		increments = new long[offsets[dag.size()]];
+		for(int node : order) {
+			if(dag.isLeaf(node)) {
+				pathCounts[node] = 1;
+				continue;
+			}
+			long paths = 0;
+			for(int i=0; i<dag.outDegree(node); i++) {
+				increments[offsets[node] + i] = paths;
+				paths = Math.addExact(paths, pathCounts[dag.successor(node, i)]);
+			}
+			pathCounts[node] = paths;
+		}
+	}
+
+	private void numberExact(int[] order) {
+		exactPathCounts = new BigInteger[dag.size()];
+		exactIncrements = new BigInteger[offsets[dag.size()]];
+		Arrays.fill(exactPathCounts, BigInteger.ZERO);
+		for(int node : order) {
+			if(dag.isLeaf(node)) {
+				exactPathCounts[node] = BigInteger.ONE;
+				continue;
+			}
+			BigInteger paths = BigInteger.ZERO;
+			for(int i=0; i<dag.outDegree(node); i++) {
+				exactIncrements[offsets[node] + i] = paths;
+				paths = paths.add(exactPathCounts[dag.successor(node, i)]);
+			}
+			exactPathCounts[node] = paths;
+		}
+	}
+
+	/**
+	 * Returns the acyclic graph whose paths are numbered, decoded paths are
+	 * given as node ids of this graph
+	 * @return
+	 */
+	public PathGraph getDAG() {
+		return dag;
+	}
+
+	/**
+	 * Returns the root at which every numbered path starts or -1 if the graph is empty
+	 * @return
+	 */
+	public int getRoot() {
+		return root;
+	}
+
+	/**
+	 * Returns true if the path count does not fit in a long
+	 * @return
+	 */
+	public boolean isOverflowed() {
+		return exactPathCounts != null;
+	}
+
+	/**
+	 * Returns the number of numbered (root to leaf) paths
+	 * @return
+	 */
+	public BigInteger getPathCount() {
+		return root == -1 ? BigInteger.ZERO : getPathCount(root);
+	}
+
+	/**
+	 * Returns the number of paths from the given node to a leaf
+	 * @param node
+	 * @return
+	 */
+	public BigInteger getPathCount(int node) {
+		return exactPathCounts != null ? exactPathCounts[node] : BigInteger.valueOf(pathCounts[node]);
+	}
+
+	/**
+	 * Returns the increment of the index'th outgoing edge of the given node
+	 * @param node
+	 * @param index
+	 * @return
+	 */
+	public BigInteger getIncrement(int node, int index) {
+		int edge = offsets[node] + index;
+		return exactIncrements != null ? exactIncrements[edge] : BigInteger.valueOf(increments[edge]);
+	}
+
+	/**
+	 * Returns the path with the given id as a sequence of node ids of the DAG
+	 * @param pathId a path id in [0, getPathCount())
+	 * @return
+	 */
+	public int[] decode(long pathId) {
+		return toNodes(decodeSlots(pathId));
+	}
+
+	/**
+	 * Returns the path with the given id as a sequence of node ids of the DAG
+	 * @param pathId a path id in [0, getPathCount())
+	 * @return
+	 */
+	public int[] decode(BigInteger pathId) {
+		return toNodes(decodeSlots(pathId));
+	}
+
+	/**
+	 * Returns the path with the given id as the sequence of the indexes of
+	 * the outgoing edges taken at each node of the path (excluding the leaf),
+	 * unlike a sequence of nodes this distinguishes parallel edges
+	 * @param pathId a path id in [0, getPathCount())
+	 * @return
+	 */
+	public int[] decodeEdges(BigInteger pathId) {
+		int[] slots = decodeSlots(pathId);
+		int node = root;
+		for(int i=0; i<slots.length; i++) {
+			int index = slots[i] - offsets[node];
+			node = dag.successor(node, index);
+			slots[i] = index;
+		}
+		return slots;
+	}
+
+	private int[] toNodes(int[] slots) {
+		int[] path = new int[slots.length + 1];
+		path[0] = root;
+		for(int i=0; i<slots.length; i++) {
+			path[i + 1] = dag.successor(path[i], slots[i] - offsets[path[i]]);
+		}
+		return path;
+	}
+
+	/**
+	 * Returns the edge slots (indexes into increments) along the path with the given id
+	 * @param pathId
+	 * @return
+	 */
+	private int[] decodeSlots(long pathId) {
+		if(exactPathCounts != null) {
+			return decodeSlots(BigInteger.valueOf(pathId));
+		}
+		if(root == -1 || pathId < 0 || pathId >= pathCounts[root]) {
+			throw new IllegalArgumentException("Path id " + pathId + " is not in [0, " + getPathCount() + ").");
+		}
+		int[] slots = new int[16];
+		int length = 0;
+		int node = root;
+		long remaining = pathId;
+		while(!dag.isLeaf(node)) {
+			// the last outgoing edge whose increment does not exceed the remaining id
+			int low = offsets[node];
+			int high = offsets[node + 1] - 1;
+			while(low < high) {
+				int middle = (low + high + 1) >>> 1;
+				if(increments[middle] <= remaining) {
+					low = middle;
+				} else {
+					high = middle - 1;
+				}
+			}
+			remaining -= increments[low];
+			if(length == slots.length) {
+				slots = Arrays.copyOf(slots, length * 2);
+			}
+			slots[length++] = low;
+			node = dag.successor(node, low - offsets[node]);
+		}
+		return Arrays.copyOf(slots, length);
+	}
+
+	private int[] decodeSlots(BigInteger pathId) {
+		if(exactPathCounts == null) {
+			if(pathId.bitLength() >= Long.SIZE) {
+				throw new IllegalArgumentException("Path id " + pathId + " is not in [0, " + getPathCount() + ").");
+			}
+			return decodeSlots(pathId.longValue());
+		}
+		if(root == -1 || pathId.signum() < 0 || pathId.compareTo(exactPathCounts[root]) >= 0) {
+			throw new IllegalArgumentException("Path id " + pathId + " is not in [0, " + getPathCount() + ").");
+		}
+		int[] slots = new int[16];
+		int length = 0;
+		int node = root;
+		BigInteger remaining = pathId;
+		while(!dag.isLeaf(node)) {
+			int low = offsets[node];
+			int high = offsets[node + 1] - 1;
+			while(low < high) {
+				int middle = (low + high + 1) >>> 1;
+				if(exactIncrements[middle].compareTo(remaining) <= 0) {
+					low = middle;
+				} else {
+					high = middle - 1;
+				}
+			}
+			remaining = remaining.subtract(exactIncrements[low]);
+			if(length == slots.length) {
+				slots = Arrays.copyOf(slots, length * 2);
+			}
+			slots[length++] = low;
+			node = dag.successor(node, low - offsets[node]);
+		}
+		return Arrays.copyOf(slots, length);
+	}
+
+	/**
+	 * Returns the id of the given root to leaf path (a sequence of node ids of
+	 * the DAG), where there are parallel edges between two nodes of the path
+	 * the first of them is taken
+	 * @param path
+	 * @return
+	 */
+	public BigInteger encode(int[] path) {
+		if(path.length == 0 || path[0] != root || !dag.isLeaf(path[path.length - 1])) {
+			throw new IllegalArgumentException("Not a root to leaf path.");
+		}
+		BigInteger pathId = BigInteger.ZERO;
+		for(int i=0; i<path.length-1; i++) {
+			int index = -1;
+			for(int j=0; j<dag.outDegree(path[i]); j++) {
+				if(dag.successor(path[i], j) == path[i + 1]) {
+					index = j;
+					break;
+				}
+			}
+			if(index == -1) {
+				throw new IllegalArgumentException("There is no edge from " + path[i] + " to " + path[i + 1] + ".");
+			}
+			pathId = pathId.add(getIncrement(path[i], index));
+		}
+		return pathId;
+	}
+
+	/**
+	 * Returns the source line numbers of the given path
+	 * @param path
+	 * @return
+	 */
+	public long[] getLineNumbers(int[] path) {
+		long[] lineNumbers = new long[path.length];
+		for(int i=0; i<path.length; i++) {
+			lineNumbers[i] = dag.getLineNumber(path[i]);
+		}
+		return lineNumbers;
+	}
+
+}
@@ -1,13 +1,9 @@
 package com.se421.paths.algorithms.counting;
 
-import java.util.Stack;
-
-import com.ensoftcorp.atlas.core.db.graph.Edge;
-import com.ensoftcorp.atlas.core.db.graph.Node;
-import com.ensoftcorp.atlas.core.db.set.AtlasSet;
 import com.ensoftcorp.atlas.core.query.Q;
-import com.ensoftcorp.atlas.core.script.Common;
 import com.se421.paths.algorithms.PathCounter;
+import com.se421.paths.graph.PathGraph;
+import com.se421.paths.transforms.DAGCache;
 import com.se421.paths.transforms.DAGTransform;
 
 /**
@@ -36,54 +32,71 @@ public class DFSPathCounter extends PathCounter {
 	 * @return
 	 */
 	public CountingResult countPaths(Q cfg) {
+		// create (or reuse) a directed acyclic graph (DAG)
+		return countPaths(DAGCache.getIndexedDAG(cfg));
+	}
+	
+	/**
+	 * Counts the number of paths in a given graph by walking each path
+	 * 
+	 * The graph is made acyclic with a DAGTransform if it has back edges, a
+	 * DAG is walked as is so it can share a single DAG transform with other
+	 * counters.
+	 * 
+	 * @param cfg
+	 * @return
+	 */
+	@Override
+	public CountingResult countPaths(PathGraph cfg) {
+		PathGraph dag = new DAGTransform().transform(cfg);
+		
 		// the total number of paths discovered
 		// and the number of additions required to count the path
 		long numPaths = 0;
 		long additions = 0;
-
-		// create a directed acyclic graph (DAG)
-		DAGTransform transformer = new DAGTransform();
-		Q dag = transformer.transform(cfg);
-
-		// the roots and leaves of the DAG
-		AtlasSet<Node> dagLeaves = dag.leaves().eval().nodes();
-		Node dagRoot = dag.roots().eval().nodes().one();
+		
+		// the root of the DAG
+		int[] dagRoots = dag.roots();
 
 		// handle some trivial edge cases
-		if(dagRoot == null) {
+		if(dagRoots.length == 0) {
 			// function is empty, there are no paths
 			return new CountingResult(0L,0L);
-		} else if(dagLeaves.contains(dagRoot)) {
+		} else if(dag.isLeaf(dagRoots[0])) {
 			// function contains a single node there must be 1 path
 			return new CountingResult(0L,1L);
 		}
-
+		
 		// stack for depth first search (DFS)
-		Stack<Node> stack = new Stack<Node>();
-
+		// every pending entry is a distinct edge leaving a node on the current path,
+		// so the stack never holds more than one entry per edge (plus the root)
+		int[] stack = new int[dag.edgeCount() + 1];
+		int top = 0;
+		
 		// start searching from the root
-		stack.push(dagRoot);
-
+		stack[top++] = dagRoots[0];
+		
 		// depth first search on directed acyclic graph
-		while (!stack.isEmpty()) {
+		while (top > 0) {
 			// next node to process
-			Node currentNode = stack.pop();
-
+			int currentNode = stack[--top];
+			
 			// get the children of the current node
 			// note: we iterate by edge in case there are multiple edges from a predecessor to a successor
-			for (Edge outgoingEdge : dag.forwardStep(Common.toQ(currentNode)).eval().edges()) {
-				Node successor = outgoingEdge.to();
-				if(dagLeaves.contains(successor)) {
+			int outDegree = dag.outDegree(currentNode);
+			for(int i=0; i<outDegree; i++) {
+				int successor = dag.successor(currentNode, i);
+				if(dag.isLeaf(successor)) {
 					// if we reached a leaf increment the counter by 1
 					numPaths++;
 					additions++;
 				} else {
 					// push the child node on the stack to be processed
-					stack.push(successor);
+					stack[top++] = successor;
 				}
 			}
 		}
-
+		
 		// at the end, we have traversed all paths once, so return the count
 		return new CountingResult(additions, numPaths);
 	}
@@ -0,0 +1,377 @@
+package com.se421.paths.algorithms.counting;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.ensoftcorp.atlas.core.db.graph.Edge;
+import com.ensoftcorp.atlas.core.db.graph.Node;
+import com.ensoftcorp.atlas.core.log.Log;
+import com.ensoftcorp.atlas.core.query.Q;
+import com.ensoftcorp.atlas.core.script.Common;
+import com.ensoftcorp.atlas.core.xcsg.XCSG;
+import com.se421.paths.graph.IndexedGraph;
+import com.se421.paths.support.CallGraphIndex;
+import com.se421.paths.support.HelperQueries;
+import com.se421.paths.transforms.DAGTransform;
+
+/**
+ * This program counts the inclusive (interprocedural) paths of functions,
+ * which are the paths of a function including the paths of the functions it
+ * calls.
+ *
+ * A control flow node that contains call sites stands for the paths of its
+ * callees: each call site contributes the sum of the inclusive path counts
+ * of its possible targets and the call sites of a node are multiplied (they
+ * are executed in sequence). The inclusive count of a function is then the
+ * number of paths of its DAG weighted by the product of these node weights,
+ * which is computed by the weighted multiplicity sweep of the
+ * MultiplicitiesPathCounter (see countWeightedPaths). The DAGs are built
+ * for the pass and bypass the DAGCache.
+ *
+ * Functions are processed bottom up in the order of the strongly connected
+ * components of the call graph (see CallGraphIndex), so every callee is
+ * counted before its callers. Components are grouped into levels by their
+ * height in the condensed call graph and the components of a level, which
+ * are independent of each other, are counted in parallel. Recursive
+ * components are unrolled a bounded number of times: with a bound of 0 the
+ * recursive calls count as a single path, and each additional unrolling
+ * substitutes the previous counts of the component for its recursive calls.
+ *
+ * Call site targets are the functions given by XCSG.InvokedFunction edges,
+ * dynamically dispatched call sites are counted by their XCSG.InvokedSignature
+ * method. Functions without a control flow graph count as a single path.
+ * A function whose paths cannot be counted (for example because its DAG
+ * cannot be built) is logged and left out of the result, its callers count
+ * calls to it as a single path.
+ *
+ * Example Atlas Shell Usage:
+ * var counter = new InterproceduralPathCounter
+ * var result = counter.countPaths(SetDefinitions.app().nodes(XCSG.Function))
+ * result.getProgramPaths()
+ */
+public class InterproceduralPathCounter {
+
+	public static final int DEFAULT_RECURSION_BOUND = 1;
+
+	private final int recursionBound;
+	private final int threads;
+
+	/**
+	 * Creates a counter with the default recursion bound and one thread per available processor
+	 */
+	public InterproceduralPathCounter() {
+		this(DEFAULT_RECURSION_BOUND, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param recursionBound the number of times recursive calls are unrolled
+	 * @param threads the number of threads counting independent components
+	 */
+	public InterproceduralPathCounter(int recursionBound, int threads) {
+		if(recursionBound < 0) {
+			throw new IllegalArgumentException("The recursion bound must not be negative.");
+		}
+		if(threads < 1) {
+			throw new IllegalArgumentException("At least one thread is required.");
+		}
+		this.recursionBound = recursionBound;
+		this.threads = threads;
+	}
+
+	/**
+	 * Counts the inclusive paths of the given functions and of every function
+	 * they transitively call
+	 * @param functions
+	 * @return
+	 */
+	public InterproceduralCountingResult countPaths(Q functions) {
+		CallGraphIndex callGraph = CallGraphIndex.getInstance();
+		Q cg = HelperQueries.cg(functions);
+		Map<Node,List<Node[]>> callSiteTargets = getCallSiteTargets();
+
+		// group the functions by strongly connected component, functions that are not
+		// in the call graph (they make and receive no calls) get a component of their own
+		Map<Integer,List<Node>> components = new HashMap<Integer,List<Node>>();
+		Map<Node,Integer> functionComponents = new HashMap<Node,Integer>();
+		int nextComponent = callGraph.getComponentCount();
+		for(Node function : cg.eval().nodes()) {
+			int component = callGraph.getComponent(function);
+			if(component == -1) {
+				component = nextComponent++;
+			}
+			functionComponents.put(function, component);
+			List<Node> members = components.get(component);
+			if(members == null) {
+				members = new ArrayList<Node>();
+				components.put(component, members);
+			}
+			members.add(function);
+		}
+
+		// components are numbered callees first, so the levels (heights) can be assigned in component order
+		List<Integer> componentOrder = new ArrayList<Integer>(components.keySet());
+		Collections.sort(componentOrder);
+		Map<Integer,Integer> levels = new HashMap<Integer,Integer>();
+		List<List<Integer>> componentsByLevel = new ArrayList<List<Integer>>();
+		for(int component : componentOrder) {
+			int level = 0;
+			for(Node function : components.get(component)) {
+				for(Node callee : callGraph.getCallees(function)) {
+					Integer calleeComponent = functionComponents.get(callee);
+					if(calleeComponent != null && calleeComponent.intValue() != component) {
+						Integer calleeLevel = levels.get(calleeComponent);
+						if(calleeLevel != null) {
+							level = Math.max(level, calleeLevel + 1);
+						}
+					}
+				}
+			}
+			levels.put(component, level);
+			while(componentsByLevel.size() <= level) {
+				componentsByLevel.add(new ArrayList<Integer>());
+			}
+			componentsByLevel.get(level).add(component);
+		}
+
+		final Map<Node,BigInteger> inclusivePaths = new ConcurrentHashMap<Node,BigInteger>();
+		final Map<Node,List<Node[]>> targets = callSiteTargets;
+		ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+		try {
+			for(List<Integer> level : componentsByLevel) {
+				List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+				for(int component : level) {
+					final List<Node> members = components.get(component);
+					final boolean recursive = callGraph.isRecursive(members.get(0));
+					tasks.add(new Callable<Void>() {
+						@Override
+						public Void call() throws Exception {
+							countComponent(members, recursive, targets, inclusivePaths);
+							return null;
+						}
+					});
+				}
+				if(executor == null || tasks.size() == 1) {
+					for(Callable<Void> task : tasks) {
+						task.call();
+					}
+				} else {
+					for(Future<Void> task : executor.invokeAll(tasks)) {
+						task.get();
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Path counting was interrupted", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		} finally {
+			if(executor != null) {
+				executor.shutdownNow();
+			}
+		}
+
+		// the program paths start at the functions that are not called from another component
+		BigInteger programPaths = BigInteger.ZERO;
+		for(Map.Entry<Node,Integer> entry : functionComponents.entrySet()) {
+			Node function = entry.getKey();
+			boolean called = false;
+			for(Node caller : callGraph.getCallers(function)) {
+				Integer callerComponent = functionComponents.get(caller);
+				if(callerComponent != null && callerComponent.intValue() != entry.getValue().intValue()) {
+					called = true;
+					break;
+				}
+			}
+			// note: functions that could not be counted are left out
+			if(!called && inclusivePaths.containsKey(function)) {
+				programPaths = programPaths.add(inclusivePaths.get(function));
+			}
+		}
+		return new InterproceduralCountingResult(new HashMap<Node,BigInteger>(inclusivePaths), programPaths);
+	}
+
+	/**
+	 * Counts the inclusive paths of the functions of a strongly connected
+	 * component, a function that cannot be counted is logged and left out of
+	 * the inclusive counts
+	 * @param members
+	 * @param recursive
+	 * @param callSiteTargets
+	 * @param inclusivePaths the counts of all previously counted functions, the counts of the members are added
+	 */
+	private void countComponent(List<Node> members, boolean recursive, Map<Node,List<Node[]>> callSiteTargets, Map<Node,BigInteger> inclusivePaths) {
+		if(!recursive) {
+			Node function = members.get(0);
+			try {
+				inclusivePaths.put(function, countFunction(getDAG(function), callSiteTargets, inclusivePaths, null));
+			} catch (RuntimeException e) {
+				Log.error("Unable to count inclusive paths of " + function.getAttr(XCSG.name), e);
+			}
+			return;
+		}
+		// recursive calls initially count as a single path
+		Map<Node,BigInteger> componentPaths = new HashMap<Node,BigInteger>();
+		Map<Node,IndexedGraph> dags = new HashMap<Node,IndexedGraph>();
+		for(Node function : members) {
+			try {
+				dags.put(function, getDAG(function));
+				componentPaths.put(function, BigInteger.ONE);
+			} catch (RuntimeException e) {
+				Log.error("Unable to count inclusive paths of " + function.getAttr(XCSG.name), e);
+			}
+		}
+		for(int unrolling=0; unrolling<=recursionBound; unrolling++) {
+			Map<Node,BigInteger> unrolledPaths = new HashMap<Node,BigInteger>();
+			for(Node function : componentPaths.keySet()) {
+				try {
+					unrolledPaths.put(function, countFunction(dags.get(function), callSiteTargets, inclusivePaths, componentPaths));
+				} catch (RuntimeException e) {
+					Log.error("Unable to count inclusive paths of " + function.getAttr(XCSG.name), e);
+				}
+			}
+			componentPaths = unrolledPaths;
+		}
+		inclusivePaths.putAll(componentPaths);
+	}
+
+	/**
+	 * Returns the DAG of the control flow graph of the given function
+	 * 
+	 * Note: the DAG is not taken from the DAGCache, a whole program pass
+	 * would evict the DAGs of the interactively analyzed functions
+	 * 
+	 * @param function
+	 * @return
+	 */
+	private static IndexedGraph getDAG(Node function) {
+		return new DAGTransform().transformToIndexedGraph(HelperQueries.cfg(function));
+	}
+
+	/**
+	 * Counts the paths of a function's DAG weighted by the inclusive paths of its call sites
+	 * @param dag
+	 * @param callSiteTargets
+	 * @param inclusivePaths the counts of the callees in other components
+	 * @param componentPaths the counts of the callees in the same component or null
+	 * @return
+	 */
+	private static BigInteger countFunction(IndexedGraph dag, Map<Node,List<Node[]>> callSiteTargets, Map<Node,BigInteger> inclusivePaths, Map<Node,BigInteger> componentPaths) {
+		if(dag.roots().length == 0) {
+			// function has no body, it counts as a single path
+			return BigInteger.ONE;
+		}
+		BigInteger[] weights = new BigInteger[dag.size()];
+		for(int node=0; node<dag.size(); node++) {
+			List<Node[]> callSites = callSiteTargets.get(dag.getNode(node));
+			if(callSites == null) {
+				continue;
+			}
+			BigInteger weight = BigInteger.ONE;
+			for(Node[] targets : callSites) {
+				BigInteger callSitePaths = BigInteger.ZERO;
+				for(Node target : targets) {
+					BigInteger targetPaths = (componentPaths != null) ? componentPaths.get(target) : null;
+					if(targetPaths == null) {
+						targetPaths = inclusivePaths.get(target);
+					}
+					// note: targets outside of the counted functions count as a single path
+					callSitePaths = callSitePaths.add(targetPaths != null ? targetPaths : BigInteger.ONE);
+				}
+				weight = weight.multiply(callSitePaths);
+			}
+			weights[node] = weight;
+		}
+		return new MultiplicitiesPathCounter().countWeightedPaths(dag, weights).getExactPaths();
+	}
+
+	/**
+	 * Returns the targets of the call sites contained in each control flow
+	 * node, computed with one pass over the invocation edges
+	 * @return
+	 */
+	private static Map<Node,List<Node[]>> getCallSiteTargets() {
+		Map<Node,List<Node>> callSiteTargets = new HashMap<Node,List<Node>>();
+		Q invocationEdges = Common.universe().edges(XCSG.InvokedFunction, XCSG.InvokedSignature);
+		for(Edge invocationEdge : invocationEdges.eval().edges()) {
+			List<Node> targets = callSiteTargets.get(invocationEdge.from());
+			if(targets == null) {
+				targets = new ArrayList<Node>();
+				callSiteTargets.put(invocationEdge.from(), targets);
+			}
+			targets.add(invocationEdge.to());
+		}
+		Map<Node,List<Node[]>> controlFlowNodeTargets = new HashMap<Node,List<Node[]>>();
+		for(Map.Entry<Node,List<Node>> entry : callSiteTargets.entrySet()) {
+			Node controlFlowNode = HelperQueries.getContainingControlFlowNode(entry.getKey());
+			if(controlFlowNode == null) {
+				continue;
+			}
+			List<Node[]> callSites = controlFlowNodeTargets.get(controlFlowNode);
+			if(callSites == null) {
+				callSites = new ArrayList<Node[]>();
+				controlFlowNodeTargets.put(controlFlowNode, callSites);
+			}
+			callSites.add(entry.getValue().toArray(new Node[entry.getValue().size()]));
+		}
+		return controlFlowNodeTargets;
+	}
+
+	/**
+	 * Holds the inclusive path counts of the counted functions
+	 */
+	public static class InterproceduralCountingResult {
+		private Map<Node,BigInteger> inclusivePaths;
+		private BigInteger programPaths;
+
+		public InterproceduralCountingResult(Map<Node,BigInteger> inclusivePaths, BigInteger programPaths) {
+			this.inclusivePaths = inclusivePaths;
+			this.programPaths = programPaths;
+		}
+
+		/**
+		 * Returns the inclusive path count of the given function or null if it was not counted
+		 * @param function
+		 * @return
+		 */
+		public BigInteger getPaths(Node function) {
+			return inclusivePaths.get(function);
+		}
+
+		/**
+		 * Returns the inclusive path counts of all counted functions
+		 * @return
+		 */
+		public Map<Node,BigInteger> getInclusivePaths() {
+			return inclusivePaths;
+		}
+
+		/**
+		 * Returns the sum of the inclusive path counts of the counted functions
+		 * that are not called from another strongly connected component (the
+		 * entry points)
+		 * @return
+		 */
+		public BigInteger getProgramPaths() {
+			return programPaths;
+		}
+
+		@Override
+		public String toString() {
+			return "Program Paths: " + programPaths + ", Functions: " + inclusivePaths.size();
+		}
+	}
+
+}
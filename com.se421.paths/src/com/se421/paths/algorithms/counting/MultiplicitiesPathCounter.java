@@ -1,127 +1,301 @@
 package com.se421.paths.algorithms.counting;
 
-import java.util.HashMap;
-import java.util.Stack;
+import java.math.BigInteger;
 
-import com.ensoftcorp.atlas.core.db.graph.Edge;
-import com.ensoftcorp.atlas.core.db.graph.Node;
-import com.ensoftcorp.atlas.core.db.set.AtlasSet;
-import com.ensoftcorp.atlas.core.log.Log;
 import com.ensoftcorp.atlas.core.query.Q;
-import com.ensoftcorp.atlas.core.script.Common;
 import com.se421.paths.algorithms.PathCounter;
-import com.se421.paths.algorithms.PathCounter.CountingResult;
+import com.se421.paths.graph.PathGraph;
+import com.se421.paths.transforms.DAGCache;
 import com.se421.paths.transforms.DAGTransform;
 
 /**
  * This program counts all paths in a CFG by counting path multiplicities.
  * This implementation runs in O(n) time.
- * 
+ *
+ * The DAG is snapshot once into a PathGraph and the multiplicities are
+ * propagated with a single topological sweep over primitive arrays, so no
+ * Atlas queries are issued while counting.
+ *
  * @author STUDENT NAME HERE
  */
 public class MultiplicitiesPathCounter extends PathCounter {
-	
+
 	public MultiplicitiesPathCounter() {}
 
 	/**
 	 * Counts the number of paths in a given CFG
-	 * 
+	 *
 	 * Example Atlas Shell Usage:
 	 * var dskqopt = functions("dskqopt")
 	 * var dskqoptCFG = cfg(dskqopt)
 	 * var mCounter = new MultiplicitiesPathCounter
 	 * mCounter.countPaths(dskqoptCFG)
-	 * 
+	 *
 	 * @param cfg
 	 * @return
 	 */
 	public CountingResult countPaths(Q cfg) {
-		// the total number of paths discovered
-		// and the number of additions required to count the path
-		long numPaths = 0;
-		long additions = 0;
-		
-		HashMap<Node, Long> multiplicities = new HashMap<Node, Long>();
-		HashMap<Node, Long> triggers = new HashMap<Node, Long>();
-		
-		// create a directed acyclic graph (DAG)
-		DAGTransform transformer = new DAGTransform();
-		Q dag = transformer.transform(cfg);
-		// the roots and leaves of the DAG
-		AtlasSet<Node> dagLeaves = dag.leaves().eval().nodes();
-		Node dagRoot = dag.roots().eval().nodes().one();
+		return countPaths(cfg, false);
+	}
+
+	/**
+	 * Counts the number of paths in a given CFG
+	 *
+	 * If arbitraryPrecision is true, multiplicities are computed with long
+	 * arithmetic until an overflow is detected, at which point the overflowing
+	 * multiplicities are promoted to BigInteger. Otherwise the count silently
+	 * overflows for functions with more than Long.MAX_VALUE paths.
+	 *
+	 * Example Atlas Shell Usage:
+	 * var dskqopt = functions("dskqopt")
+	 * var dskqoptCFG = cfg(dskqopt)
+	 * var mCounter = new MultiplicitiesPathCounter
+	 * mCounter.countPaths(dskqoptCFG, true).getExactPaths()
+	 *
+	 * @param cfg
+	 * @param arbitraryPrecision
+	 * @return
+	 */
+	public CountingResult countPaths(Q cfg, boolean arbitraryPrecision) {
+		// create (or reuse) a directed acyclic graph (DAG)
+		return countPaths(DAGCache.getIndexedDAG(cfg), arbitraryPrecision);
+	}
+
+	/**
+	 * Assigns each path of the given CFG a dense Ball-Larus path id, see
+	 * BallLarusNumbering
+	 *
+	 * Example Atlas Shell Usage:
+	 * var dskqoptCFG = cfg(functions("dskqopt"))
+	 * var numbering = new MultiplicitiesPathCounter().numberPaths(dskqoptCFG)
+	 * numbering.getLineNumbers(numbering.decode(42))
+	 *
+	 * @param cfg
+	 * @return
+	 */
+	public BallLarusNumbering numberPaths(Q cfg) {
+		// create (or reuse) a directed acyclic graph (DAG)
+		return numberPaths(DAGCache.getIndexedDAG(cfg));
+	}
+
+	/**
+	 * Assigns each path of the given graph a dense Ball-Larus path id, the
+	 * graph is made acyclic with a DAGTransform if it has back edges
+	 * @param cfg
+	 * @return
+	 */
+	public BallLarusNumbering numberPaths(PathGraph cfg) {
+		return new BallLarusNumbering(cfg);
+	}
+
+	/**
+	 * Counts the number of paths through each node and edge of the given CFG
+	 * with a forward and a backward multiplicity sweep, see PathThroughCounts
+	 *
+	 * Example Atlas Shell Usage:
+	 * var dskqoptCFG = cfg(functions("dskqopt"))
+	 * var counts = new MultiplicitiesPathCounter().countPathsThrough(dskqoptCFG)
+	 * DisplayUtils.show(dskqoptCFG, counts.getHeatmap(), false, "dskqopt paths")
+	 *
+	 * @param cfg
+	 * @return
+	 */
+	public PathThroughCounts countPathsThrough(Q cfg) {
+		// create (or reuse) a directed acyclic graph (DAG)
+		return countPathsThrough(DAGCache.getIndexedDAG(cfg));
+	}
+
+	/**
+	 * Counts the number of paths through each node and edge of the given
+	 * graph, the graph is made acyclic with a DAGTransform if it has back edges
+	 * @param cfg
+	 * @return
+	 */
+	public PathThroughCounts countPathsThrough(PathGraph cfg) {
+		return new PathThroughCounts(cfg);
+	}
+
+	/**
+	 * Counts the number of paths in a given graph
+	 * @param cfg
+	 * @return
+	 */
+	@Override
+	public CountingResult countPaths(PathGraph cfg) {
+		return countPaths(cfg, false);
+	}
+
+	/**
+	 * Counts the number of paths in a given graph, the graph is made acyclic
+	 * with a DAGTransform if it has back edges
+	 *
+	 * Multiplicities are propagated in topological order (Kahn's algorithm), a
+	 * node is processed once all of its incoming edges have been accounted for.
+	 * Each propagation along an edge and each accumulation of a leaf
+	 * multiplicity counts as one addition.
+	 *
+	 * @param cfg
+	 * @param arbitraryPrecision
+	 * @return
+	 */
+	public CountingResult countPaths(PathGraph cfg, boolean arbitraryPrecision) {
+		return countPaths(cfg, null, arbitraryPrecision);
+	}
+
+	/**
+	 * Counts the number of paths in a given graph where each node stands for
+	 * as many paths as its weight, that is the sum over all paths of the
+	 * product of the weights of the nodes on the path. The graph is made
+	 * acyclic with a DAGTransform if it has back edges (which keeps the node
+	 * ids, so the weights are indexed by the node ids of the given graph).
+	 *
+	 * Multiplicities are computed with long arithmetic until an overflow is
+	 * detected, see countPaths(Q, boolean).
+	 *
+	 * @param cfg
+	 * @param weights the weight of each node, a null entry counts as a weight of 1
+	 * @return
+	 */
+	public CountingResult countWeightedPaths(PathGraph cfg, BigInteger[] weights) {
+		return countPaths(cfg, weights, true);
+	}
+
+	/**
+	 * The multiplicity sweep shared by the weighted and unweighted counts
+	 * @param cfg
+	 * @param weights the node weights or null if the paths are not weighted
+	 * @param arbitraryPrecision
+	 * @return
+	 */
+	private CountingResult countPaths(PathGraph cfg, BigInteger[] weights, boolean arbitraryPrecision) {
+		PathGraph dag = new DAGTransform().transform(cfg);
+
+		// the roots of the DAG
+		int[] dagRoots = dag.roots();
+
 		// handle some trivial edge cases
-		if(dagRoot == null) {
+		if(dagRoots.length == 0) {
 			// function is empty, there are no paths
 			return new CountingResult(0L,0L);
-		} else if(dagLeaves.contains(dagRoot)) {
+		}
+		int dagRoot = dagRoots[0];
+		if(dag.isLeaf(dagRoot) && weights == null) {
 			// function contains a single node there must be 1 path
 			return new CountingResult(0L,1L);
 		}
 
+		// the total number of paths discovered
+		// and the number of additions required to count the path
+		long numPaths = 0;
+		BigInteger exactNumPaths = null;
+		long additions = 0;
 
-		Stack<Node> stack = new Stack<Node>();
+		int size = dag.size();
+		long[] multiplicities = new long[size];
 
-		// start searching from the root
-		stack.push(dagRoot);
-		// depth first search on directed acyclic graph
-		while (!stack.isEmpty()) {
-			// next node to process
-			Node currentNode = stack.pop();
-		
-			// get the children of the current node
-			// note: we iterate by edge in case there are multiple edges from a predecessor to a successor
-			for (Edge outgoingEdge : dag.forwardStep(Common.toQ(currentNode)).eval().edges()) {
-				Node successor = outgoingEdge.to();
-				Long ms;
-				Long ts;
-				Long mv;
-				// Number of edges from v to s
-				Long numEdges = dag.betweenStep(Common.toQ(currentNode), Common.toQ(successor)).eval().edges().size();
-				
-				if(multiplicities.containsKey(successor)) {
-					ms = multiplicities.get(successor);
+		// multiplicities that have been promoted after overflowing a long
+		// allocated on the first overflow, a null entry means use the long value
+		BigInteger[] exactMultiplicities = null;
+
+		// a node is triggered once all of its predecessors have been processed
+		int[] triggers = new int[size];
+		for(int node=0; node<size; node++) {
+			triggers[node] = dag.inDegree(node);
+		}
+
+		// every node enters the worklist exactly once, so the worklist is a plain array
+		// note: other roots are seeded with a multiplicity of 0 so that their successors still get triggered
+		int[] worklist = new int[size];
+		int head = 0;
+		int tail = 0;
+		multiplicities[dagRoot] = 1;
+		for(int root : dagRoots) {
+			worklist[tail++] = root;
+		}
+
+		while(head < tail) {
+			int node = worklist[head++];
+			BigInteger exactMultiplicity = (exactMultiplicities == null) ? null : exactMultiplicities[node];
+
+			// every path reaching a weighted node continues as weight many paths
+			BigInteger weight = (weights == null) ? null : weights[node];
+			if(weight != null) {
+				if(exactMultiplicity == null && weight.bitLength() < Long.SIZE) {
+					if(arbitraryPrecision) {
+						try {
+							multiplicities[node] = Math.multiplyExact(multiplicities[node], weight.longValue());
+						} catch (ArithmeticException overflow) {
+							exactMultiplicity = BigInteger.valueOf(multiplicities[node]).multiply(weight);
+						}
+					} else {
+						multiplicities[node] = multiplicities[node] * weight.longValue();
+					}
 				} else {
-					ms = (long) 0;
+					exactMultiplicity = ((exactMultiplicity != null) ? exactMultiplicity : BigInteger.valueOf(multiplicities[node])).multiply(weight);
 				}
-				
-				if(multiplicities.containsKey(currentNode)) {
-					mv = multiplicities.get(currentNode);
-					
-				} else {
-					if(currentNode.equals(dagRoot)) {
-						mv = (long) 1;
-					} else {
-						mv = (long) 0;
+				if(exactMultiplicity != null) {
+					if(exactMultiplicities == null) {
+						exactMultiplicities = new BigInteger[size];
 					}
+					exactMultiplicities[node] = exactMultiplicity;
 				}
-				
-				if(triggers.containsKey(successor)) {
-					ts = triggers.get(successor);
+			}
+
+			if(dag.isLeaf(node)) {
+				// accumulate the paths reaching this leaf
+				if(exactNumPaths == null && exactMultiplicity == null) {
+					if(arbitraryPrecision) {
+						try {
+							numPaths = Math.addExact(numPaths, multiplicities[node]);
+						} catch (ArithmeticException overflow) {
+							exactNumPaths = BigInteger.valueOf(numPaths).add(BigInteger.valueOf(multiplicities[node]));
+						}
+					} else {
+						numPaths = numPaths + multiplicities[node];
+					}
 				} else {
-					ts = dag.reverseStep(Common.toQ(successor)).eval().edges().size();
+					exactNumPaths = (exactNumPaths != null) ? exactNumPaths : BigInteger.valueOf(numPaths);
+					exactNumPaths = exactNumPaths.add((exactMultiplicity != null) ? exactMultiplicity : BigInteger.valueOf(multiplicities[node]));
 				}
-				
-				ms = ms + numEdges * mv;
-				ts = ts - numEdges;
-				triggers.put(successor, ts);
-				multiplicities.put(successor, ms);
-				Log.info("MS: " + ms + " NumEdges: " + numEdges + " MV: " + mv + " TS: " + ts);
-				if(ts == 0) {
-					if(dagLeaves.contains(successor)) {
-						// if we reached a leaf increment the counter by 1
-						numPaths = numPaths + ms;
-						additions++;
+				additions++;
+				continue;
+			}
+
+			// note: we iterate by edge in case there are multiple edges from a predecessor to a successor
+			int outDegree = dag.outDegree(node);
+			for(int i=0; i<outDegree; i++) {
+				int successor = dag.successor(node, i);
+				BigInteger exactSuccessorMultiplicity = (exactMultiplicities == null) ? null : exactMultiplicities[successor];
+				if(exactMultiplicity == null && exactSuccessorMultiplicity == null) {
+					if(arbitraryPrecision) {
+						try {
+							multiplicities[successor] = Math.addExact(multiplicities[successor], multiplicities[node]);
+						} catch (ArithmeticException overflow) {
+							if(exactMultiplicities == null) {
+								exactMultiplicities = new BigInteger[size];
+							}
+							exactMultiplicities[successor] = BigInteger.valueOf(multiplicities[successor]).add(BigInteger.valueOf(multiplicities[node]));
+						}
 					} else {
-						// push the child node on the stack to be processed
-						stack.push(successor);
+						multiplicities[successor] = multiplicities[successor] + multiplicities[node];
 					}
-				}			
+				} else {
+					exactSuccessorMultiplicity = (exactSuccessorMultiplicity != null) ? exactSuccessorMultiplicity : BigInteger.valueOf(multiplicities[successor]);
+					exactMultiplicities[successor] = exactSuccessorMultiplicity.add((exactMultiplicity != null) ? exactMultiplicity : BigInteger.valueOf(multiplicities[node]));
+				}
+				additions++;
+
+				if(--triggers[successor] == 0) {
+					worklist[tail++] = successor;
+				}
 			}
 		}
-		
+
 		// at the end, we have traversed all paths once, so return the count
+		if(exactNumPaths != null) {
+			return new CountingResult(additions, exactNumPaths);
+		}
 		return new CountingResult(additions, numPaths);
 	}
-	
+
 }
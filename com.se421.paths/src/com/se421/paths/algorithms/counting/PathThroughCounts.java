@@ -0,0 +1,291 @@
+package com.se421.paths.algorithms.counting;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.ensoftcorp.atlas.core.db.graph.Edge;
+import com.ensoftcorp.atlas.core.db.graph.Node;
+import com.ensoftcorp.atlas.core.markup.Markup;
+import com.se421.paths.graph.IndexedGraph;
+import com.se421.paths.graph.PathGraph;
+import com.se421.paths.support.LabelMaker;
+import com.se421.paths.transforms.DAGTransform;
+
+/**
+ * The number of root to leaf paths passing through each node and edge of a
+ * graph.
+ *
+ * The paths through a node are the product of its forward multiplicity (the
+ * number of paths from the root to the node) and its backward multiplicity
+ * (the number of paths from the node to a leaf). The paths through an edge
+ * are the forward multiplicity of its source times the backward
+ * multiplicity of its target. Both multiplicities are computed with one
+ * sweep of the DAG each (in topological and reverse topological order), so
+ * all counts take O(n) time.
+ *
+ * Counts are kept in long arithmetic unless a multiplicity overflows, in
+ * which case the counts are computed with BigInteger arithmetic instead.
+ *
+ * Example Atlas Shell Usage:
+ * var dskqoptCFG = cfg(functions("dskqopt"))
+ * var counts = new MultiplicitiesPathCounter().countPathsThrough(dskqoptCFG)
+ * DisplayUtils.show(dskqoptCFG, counts.getHeatmap(), false, "dskqopt paths")
+ */
+public class PathThroughCounts {
+
+	private final PathGraph dag;
+	private final int root;
+
+	// forward (from the root) and backward (to a leaf) multiplicities, the exact
+	// multiplicities are only used (and the long multiplicities are null) if a multiplicity overflows a long
+	private long[] forward;
+	private long[] backward;
+	private BigInteger[] exactForward;
+	private BigInteger[] exactBackward;
+
+	/**
+	 * Counts the paths through each node and edge of the given graph, the
+	 * graph is made acyclic with a DAGTransform if it has back edges
+	 * @param cfg
+	 */
+	public PathThroughCounts(PathGraph cfg) {
+		this.dag = new DAGTransform().transform(cfg);
+		int[] dagRoots = dag.roots();
+		this.root = dagRoots.length == 0 ? -1 : dagRoots[0];
+
+		int[] order = topologicalOrder(dagRoots);
+		try {
+			count(order);
+		} catch (ArithmeticException overflow) {
+			forward = null;
+			backward = null;
+			countExact(order);
+		}
+	}
+
+	/**
+	 * Returns the nodes reachable from the roots in an order in which every
+	 * node comes after all of its predecessors
+	 * @return
+	 */
+	private int[] topologicalOrder(int[] dagRoots) {
+		int size = dag.size();
+		int[] triggers = new int[size];
+		for(int node=0; node<size; node++) {
+			triggers[node] = dag.inDegree(node);
+		}
+		int[] worklist = new int[size];
+		int head = 0;
+		int tail = 0;
+		for(int dagRoot : dagRoots) {
+			worklist[tail++] = dagRoot;
+		}
+		while(head < tail) {
+			int node = worklist[head++];
+			for(int i=0; i<dag.outDegree(node); i++) {
+				int successor = dag.successor(node, i);
+				if(--triggers[successor] == 0) {
+					worklist[tail++] = successor;
+				}
+			}
+		}
+		return Arrays.copyOf(worklist, tail);
+	}
+
+	private void count(int[] order) {
+		int size = dag.size();
+		forward = new long[size];
+		backward = new long[size];
+		if(root == -1) {
+			return;
+		}
+		// note: other roots keep a forward multiplicity of 0, paths start at the first root
+		forward[root] = 1;
+		for(int node : order) {
+			for(int i=0; i<dag.outDegree(node); i++) {
+				int successor = dag.successor(node, i);
+				forward[successor] = Math.addExact(forward[successor], forward[node]);
+			}
+		}
+		for(int j=order.length-1; j>=0; j--) {
+			int node = order[j];
+			if(dag.isLeaf(node)) {
+				backward[node] = 1;
+				continue;
+			}
+			long paths = 0;
+			for(int i=0; i<dag.outDegree(node); i++) {
+				paths = Math.addExact(paths, backward[dag.successor(node, i)]);
+			}
+			backward[node] = paths;
+		}
+		// make sure every product fits as well
+		for(int node=0; node<size; node++) {
+			Math.multiplyExact(forward[node], backward[node]);
+		}
+	}
+
+	private void countExact(int[] order) {
+		int size = dag.size();
+		exactForward = new BigInteger[size];
+		exactBackward = new BigInteger[size];
+		// note: nodes that are not reachable from a root keep multiplicities of 0
+		Arrays.fill(exactForward, BigInteger.ZERO);
+		Arrays.fill(exactBackward, BigInteger.ZERO);
+		exactForward[root] = BigInteger.ONE;
+		for(int node : order) {
+			for(int i=0; i<dag.outDegree(node); i++) {
+				int successor = dag.successor(node, i);
+				exactForward[successor] = exactForward[successor].add(exactForward[node]);
+			}
+		}
+		for(int j=order.length-1; j>=0; j--) {
+			int node = order[j];
+			if(dag.isLeaf(node)) {
+				exactBackward[node] = BigInteger.ONE;
+				continue;
+			}
+			BigInteger paths = BigInteger.ZERO;
+			for(int i=0; i<dag.outDegree(node); i++) {
+				paths = paths.add(exactBackward[dag.successor(node, i)]);
+			}
+			exactBackward[node] = paths;
+		}
+	}
+
+	/**
+	 * Returns the acyclic graph whose paths are counted
+	 * @return
+	 */
+	public PathGraph getDAG() {
+		return dag;
+	}
+
+	/**
+	 * Returns true if a count does not fit in a long
+	 * @return
+	 */
+	public boolean isOverflowed() {
+		return exactForward != null;
+	}
+
+	/**
+	 * Returns the total number of (root to leaf) paths
+	 * @return
+	 */
+	public BigInteger getPathCount() {
+		return root == -1 ? BigInteger.ZERO : getNodePaths(root);
+	}
+
+	/**
+	 * Returns the number of paths from the root to the given node
+	 * @param node
+	 * @return
+	 */
+	public BigInteger getForwardMultiplicity(int node) {
+		return exactForward != null ? exactForward[node] : BigInteger.valueOf(forward[node]);
+	}
+
+	/**
+	 * Returns the number of paths from the given node to a leaf
+	 * @param node
+	 * @return
+	 */
+	public BigInteger getBackwardMultiplicity(int node) {
+		return exactBackward != null ? exactBackward[node] : BigInteger.valueOf(backward[node]);
+	}
+
+	/**
+	 * Returns the number of paths through the given node
+	 * @param node
+	 * @return
+	 */
+	public BigInteger getNodePaths(int node) {
+		if(exactForward != null) {
+			return exactForward[node].multiply(exactBackward[node]);
+		}
+		return BigInteger.valueOf(forward[node] * backward[node]);
+	}
+
+	/**
+	 * Returns the number of paths through the index'th outgoing edge of the given node
+	 * @param node
+	 * @param index
+	 * @return
+	 */
+	public BigInteger getEdgePaths(int node, int index) {
+		int successor = dag.successor(node, index);
+		if(exactForward != null) {
+			return exactForward[node].multiply(exactBackward[successor]);
+		}
+		return BigInteger.valueOf(forward[node] * backward[successor]);
+	}
+
+	/**
+	 * Returns the fraction of all paths that pass through the given node
+	 * @param node
+	 * @return
+	 */
+	public double getNodeShare(int node) {
+		return share(getNodePaths(node));
+	}
+
+	/**
+	 * Returns the fraction of all paths that pass through the index'th outgoing edge of the given node
+	 * @param node
+	 * @param index
+	 * @return
+	 */
+	public double getEdgeShare(int node, int index) {
+		return share(getEdgePaths(node, index));
+	}
+
+	private double share(BigInteger paths) {
+		BigInteger pathCount = getPathCount();
+		if(pathCount.signum() == 0) {
+			return 0.0;
+		}
+		if(exactForward == null) {
+			return (double) paths.longValue() / pathCount.longValue();
+		}
+		return new BigDecimal(paths).divide(new BigDecimal(pathCount), MathContext.DECIMAL64).doubleValue();
+	}
+
+	/**
+	 * Returns a markup that colors the nodes and edges of the control flow
+	 * graph by the share of paths passing through them (see
+	 * LabelMaker.setNodeHeatmap) and labels each node with its path count,
+	 * this requires the counts to be computed for an Atlas control flow graph
+	 * @return
+	 */
+	public Markup getHeatmap() {
+		if(!(dag instanceof IndexedGraph)) {
+			throw new IllegalStateException("A heatmap requires the paths of an Atlas graph.");
+		}
+		IndexedGraph indexedDAG = (IndexedGraph) dag;
+		Map<Node,Double> nodeShares = new HashMap<Node,Double>();
+		Map<Node,String> nodeLabels = new HashMap<Node,String>();
+		Map<Edge,Double> edgeShares = new HashMap<Edge,Double>();
+		for(int node=0; node<dag.size(); node++) {
+			nodeShares.put(indexedDAG.getNode(node), getNodeShare(node));
+			nodeLabels.put(indexedDAG.getNode(node), " [" + getNodePaths(node) + " paths]");
+			for(int i=0; i<dag.outDegree(node); i++) {
+				// note: redirected back edges only exist in the DAG
+				Edge edge = indexedDAG.getEdge(node, i);
+				if(edge != null) {
+					edgeShares.put(edge, getEdgeShare(node, i));
+				}
+			}
+		}
+		Markup markup = new Markup();
+		LabelMaker.setNodeHeatmap(markup, nodeShares);
+		LabelMaker.setEdgeHeatmap(markup, edgeShares);
+		LabelMaker.setNodeSuffixLabels(markup, nodeLabels);
+		return markup;
+	}
+
+}
@@ -2,36 +2,31 @@ package com.se421.paths.algorithms.enumeration;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Stack;
 
-import com.ensoftcorp.atlas.core.db.graph.Edge;
-import com.ensoftcorp.atlas.core.db.graph.Node;
-import com.ensoftcorp.atlas.core.db.set.AtlasSet;
-import com.ensoftcorp.atlas.core.log.Log;
 import com.ensoftcorp.atlas.core.query.Q;
-import com.ensoftcorp.atlas.core.script.Common;
-import com.ensoftcorp.atlas.core.xcsg.XCSG;
 import com.se421.paths.algorithms.PathEnumerator;
-import com.se421.paths.algorithms.PathCounter.CountingResult;
+import com.se421.paths.graph.PathGraph;
+import com.se421.paths.transforms.DAGCache;
 import com.se421.paths.transforms.DAGTransform;
 
 /**
  * This program counts all paths in the graph by iteratively enumerating all
  * paths. It uses a depth first traversal to walk the graph.
- * 
+ *
  * WARNING: This can be very expensive on large graphs! It's not only
- * potentially exp1Lntial in terms of the traversal, but also in terms of the
- * space to store each path!
- * 
+ * potentially exponential in terms of the traversal, but also in terms of the
+ * space to store each path! Use the streaming enumeratePaths(cfg, visitor)
+ * variants to avoid storing the paths.
+ *
  * @author STUDENT NAME HERE
  */
 public class DFSPathEnumerator extends PathEnumerator {
-	
+
 	public DFSPathEnumerator() {}
-	
+
 	/**
 	 * Counts the number of paths in a given CFG
-	 * 
+	 *
 	 * Example Atlas Shell Usage:
 	 * var dskqopt = functions("dskqopt")
 	 * var dskqoptCFG = cfg(dskqopt)
@@ -40,77 +35,132 @@ public class DFSPathEnumerator extends PathEnumerator {
 	 */
 	@Override
 	public CountingResult countPaths(Q cfg) {
-		return enumeratePaths(cfg).getCountingResult();
+		// stream the paths without retaining them
+		long paths = enumeratePaths(cfg, new PathVisitor() {
+			@Override
+			public boolean visit(long[] path, int length) {
+				return true;
+			}
+		});
+		// since an enumeration result enumerates one path at a time, the number of
+		// additions will be the same as the number of paths in the counting result
+		return new CountingResult(paths, paths);
 	}
-	
+
 	/**
 	 * Enumerates each path in the given CFG and returns each
 	 * path as a list of line numbers.
 	 */
-	@SuppressWarnings("unchecked")
 	@Override
 	public EnumerationResult enumeratePaths(Q cfg) {
 		// the total number of paths discovered
-		List<List<Long>> paths = new ArrayList<List<Long>>();
-		ArrayList<Long> subPaths = new ArrayList<Long>();
-		long additions = 0L;
-		
-		// create a directed acyclic graph (DAG)
-		DAGTransform transformer = new DAGTransform();
-		Q dag = transformer.transform(cfg);
-		
-		// the roots and leaves of the DAG
-		AtlasSet<Node> dagLeaves = dag.leaves().eval().nodes();
-		Node dagRoot = dag.roots().eval().nodes().one();
+		final List<List<Long>> paths = new ArrayList<List<Long>>();
+		enumeratePaths(cfg, new PathVisitor() {
+			@Override
+			public boolean visit(long[] path, int length) {
+				List<Long> lineNumbers = new ArrayList<Long>(length);
+				for(int i=0; i<length; i++) {
+					lineNumbers.add(path[i]);
+				}
+				paths.add(lineNumbers);
+				return true;
+			}
+		});
+
+		// note that the size of paths is practically restricted to integer range,
+		// but this algorithm will exhaust memory long before it reaches the max range
+		// since an enumeration result enumerates one path at a time, the number of
+		// additions will be the same as the number of paths in the counting result
+		return new EnumerationResult(new CountingResult(paths.size(), paths.size()), paths);
+	}
+
+	/**
+	 * Enumerates each path in the given CFG, passing each path to the visitor
+	 * as soon as it is discovered.
+	 */
+	@Override
+	public long enumeratePaths(Q cfg, PathVisitor visitor) {
+		// create (or reuse) a directed acyclic graph (DAG)
+		return enumeratePaths(DAGCache.getIndexedDAG(cfg), visitor);
+	}
+
+	/**
+	 * Counts the number of paths in a given graph by enumerating each path
+	 */
+	@Override
+	public CountingResult countPaths(PathGraph cfg) {
+		long paths = enumeratePaths(cfg, new PathVisitor() {
+			@Override
+			public boolean visit(long[] path, int length) {
+				return true;
+			}
+		});
+		return new CountingResult(paths, paths);
+	}
+
+	/**
+	 * Enumerates each root to leaf path of the given graph in depth first
+	 * order, passing each path to the visitor as soon as it is discovered. The
+	 * graph is made acyclic with a DAGTransform if it has back edges.
+	 *
+	 * A single path buffer is reused for every path.
+	 *
+	 * @param cfg
+	 * @param visitor
+	 * @return the number of paths visited
+	 */
+	@Override
+	public long enumeratePaths(PathGraph cfg, PathVisitor visitor) {
+		PathGraph dag = new DAGTransform().transform(cfg);
+		int[] dagRoots = dag.roots();
 
 		// handle some trivial edge cases
-		if(dagRoot == null) {
+		if(dagRoots.length == 0) {
 			// function is empty, there are no paths
-			return new EnumerationResult(new CountingResult(paths.size(), paths.size()), paths);
-		} else if(dagLeaves.contains(dagRoot)) {
-			// function contains a single node there must be 1 path
-			return new EnumerationResult(new CountingResult(paths.size(), paths.size()), paths);
+			return 0;
 		}
 
-		// stack for depth first search (DFS)
-		Stack<Node> stack = new Stack<Node>();
-		
-		Stack<Edge> edges = new Stack();
+		// the current path, a path in a DAG visits each node at most once
+		// nextEdges[i] is the index of the next outgoing edge of path node i to explore
+		int[] pathNodes = new int[dag.size()];
+		int[] nextEdges = new int[dag.size()];
+		long[] path = new long[dag.size()];
 
-		// start searching from the root
-		stack.push(dagRoot);
-		// pushing all the edges into the stack
-		for(Edge outgoingEdge: dag.forwardStep(Common.toQ(dagRoot)).eval().edges()) {
-			edges.push(outgoingEdge);
+		int dagRoot = dagRoots[0];
+		pathNodes[0] = dagRoot;
+		path[0] = dag.getLineNumber(dagRoot);
+		if(dag.isLeaf(dagRoot)) {
+			// function contains a single node there must be 1 path
+			visitor.visit(path, 1);
+			return 1;
 		}
-		subPaths.add(this.getLineNumber(dagRoot));
-		
-		
-		while(!edges.isEmpty()) {
-			Edge edge = edges.pop();
-			Node node = edge.to();
-			long lineNum = this.getLineNumber(node);
-			subPaths.add(lineNum);
-			// If leaves
-			if(dagLeaves.contains(node)) {
-				additions ++;
-				paths.add((List<Long>) subPaths.clone());
-				subPaths.remove(lineNum);
-			} else {
-				for(Edge e : dag.forwardStep(Common.toQ(node)).eval().edges()) {
-					edges.push(e); 
+
+		long paths = 0;
+		int depth = 0;
+		while(depth >= 0) {
+			int node = pathNodes[depth];
+			if(nextEdges[depth] == dag.outDegree(node)) {
+				// all paths through this node have been explored, backtrack
+				depth--;
+				continue;
+			}
+
+			// extend the path along the next outgoing edge
+			int successor = dag.successor(node, nextEdges[depth]++);
+			depth++;
+			pathNodes[depth] = successor;
+			nextEdges[depth] = 0;
+			path[depth] = dag.getLineNumber(successor);
+
+			if(dag.isLeaf(successor)) {
+				paths++;
+				if(!visitor.visit(path, depth + 1)) {
+					break;
 				}
-				
+				depth--;
 			}
-			
 		}
-		Log.info(paths.toString());
-		
-		// note that the size of paths is practically restricted to integer range, 
-		// but this algorithm will exhaust memory long before it reaches the max range
-		// since an enumeration result enumerates one path at a time, the number of 
-		// additions will be the same as the number of paths in the counting result
-		return new EnumerationResult(new CountingResult(paths.size(), paths.size()), paths);
+		return paths;
 	}
-	
+
 }
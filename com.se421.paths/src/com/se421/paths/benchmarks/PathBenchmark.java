@@ -0,0 +1,285 @@
+package com.se421.paths.benchmarks;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import com.se421.paths.algorithms.PathEnumerator.PathVisitor;
+import com.se421.paths.algorithms.counting.DFSPathCounter;
+import com.se421.paths.algorithms.counting.MultiplicitiesPathCounter;
+import com.se421.paths.algorithms.enumeration.DFSPathEnumerator;
+import com.se421.paths.graph.PathGraph;
+
+/**
+ * A self contained micro benchmark of the path counting and enumeration
+ * algorithms over synthetic control flow graphs (see SyntheticGraphs).
+ *
+ * Each algorithm is run on each graph for a warmup period followed by a
+ * measurement period. The throughput (operations per second), time per
+ * operation and bytes allocated per operation (when supported by the JVM)
+ * are reported along with the size of each graph, so the scaling of each
+ * algorithm with the number of nodes can be read off of the table.
+ * Algorithms that walk each path individually are skipped on graphs with
+ * more than a given number of paths.
+ *
+ * Example Atlas Shell Usage:
+ * PathBenchmark.run()
+ *
+ * Headless Usage (with the plugin classes on the classpath):
+ * java com.se421.paths.benchmarks.PathBenchmark [warmupMillis] [measureMillis] [maxWalkedPaths]
+ */
+public class PathBenchmark {
+
+	public static final long DEFAULT_WARMUP_MILLIS = 500;
+	public static final long DEFAULT_MEASURE_MILLIS = 1000;
+	public static final long DEFAULT_MAX_WALKED_PATHS = 1L << 20;
+
+	private final long warmupNanos;
+	private final long measureNanos;
+	private final long maxWalkedPaths;
+
+	// results are accumulated here so the work cannot be optimized away
+	private long sink = 0;
+
+	public PathBenchmark(long warmupMillis, long measureMillis, long maxWalkedPaths) {
+		this.warmupNanos = warmupMillis * 1000000L;
+		this.measureNanos = measureMillis * 1000000L;
+		this.maxWalkedPaths = maxWalkedPaths;
+	}
+
+	public static void main(String[] args) {
+		long warmupMillis = args.length > 0 ? Long.parseLong(args[0]) : DEFAULT_WARMUP_MILLIS;
+		long measureMillis = args.length > 1 ? Long.parseLong(args[1]) : DEFAULT_MEASURE_MILLIS;
+		long maxWalkedPaths = args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_MAX_WALKED_PATHS;
+		new PathBenchmark(warmupMillis, measureMillis, maxWalkedPaths).run(System.out);
+	}
+
+	/**
+	 * Runs the default benchmark suite and prints the results to standard out
+	 */
+	public static void run() {
+		new PathBenchmark(DEFAULT_WARMUP_MILLIS, DEFAULT_MEASURE_MILLIS, DEFAULT_MAX_WALKED_PATHS).run(System.out);
+	}
+
+	/**
+	 * Runs the benchmark suite and prints the results
+	 * @param out
+	 */
+	public void run(PrintStream out) {
+		out.println(String.format(Locale.US, "%-22s %8s %8s %14s %-26s %14s %14s %14s",
+				"graph", "nodes", "edges", "paths", "algorithm", "ops/s", "ns/op", "bytes/op"));
+		for(Shape shape : getShapes()) {
+			for(Algorithm algorithm : getAlgorithms()) {
+				Measurement measurement = measure(shape.graph, shape.paths, algorithm);
+				String opsPerSecond = measurement == null ? "skipped" : String.format(Locale.US, "%.1f", measurement.getOperationsPerSecond());
+				String nanosPerOperation = measurement == null ? "-" : String.format(Locale.US, "%.0f", measurement.getNanosPerOperation());
+				String bytesPerOperation = (measurement == null || measurement.bytes < 0) ? "-" : String.format(Locale.US, "%.0f", measurement.getBytesPerOperation());
+				out.println(String.format(Locale.US, "%-22s %8d %8d %14s %-26s %14s %14s %14s",
+						shape.name, shape.graph.size(), shape.graph.edgeCount(), format(shape.paths), algorithm.getName(),
+						opsPerSecond, nanosPerOperation, bytesPerOperation));
+			}
+		}
+		out.flush();
+	}
+
+	/**
+	 * Formats large path counts in scientific notation
+	 * @param paths
+	 * @return
+	 */
+	private static String format(BigInteger paths) {
+		String digits = paths.toString();
+		if(digits.length() <= 14) {
+			return digits;
+		}
+		return digits.charAt(0) + "." + digits.substring(1, 3) + "e" + (digits.length() - 1);
+	}
+
+	/**
+	 * Returns the benchmarked graphs, each shape is generated at increasing sizes
+	 * @return
+	 */
+	protected List<Shape> getShapes() {
+		List<Shape> shapes = new ArrayList<Shape>();
+		for(int diamonds : new int[]{ 8, 16, 64, 256, 1024 }) {
+			shapes.add(new Shape("diamondChain(" + diamonds + ")", SyntheticGraphs.diamondChain(diamonds)));
+		}
+		for(int depth : new int[]{ 4, 16, 64, 256 }) {
+			shapes.add(new Shape("loopNest(" + depth + ")", SyntheticGraphs.loopNest(depth)));
+		}
+		for(int cases : new int[]{ 16, 256, 4096 }) {
+			shapes.add(new Shape("switchChain(2," + cases + ")", SyntheticGraphs.switchChain(2, cases)));
+		}
+		for(int loops : new int[]{ 4, 16, 64 }) {
+			shapes.add(new Shape("gotoLoops(" + loops + ",8)", SyntheticGraphs.gotoLoops(loops, 8)));
+		}
+		return shapes;
+	}
+
+	/**
+	 * Returns the benchmarked algorithms
+	 * @return
+	 */
+	protected List<Algorithm> getAlgorithms() {
+		List<Algorithm> algorithms = new ArrayList<Algorithm>();
+		final MultiplicitiesPathCounter multiplicitiesCounter = new MultiplicitiesPathCounter();
+		final DFSPathCounter dfsCounter = new DFSPathCounter();
+		final DFSPathEnumerator enumerator = new DFSPathEnumerator();
+		algorithms.add(new Algorithm("MultiplicitiesPathCounter", false) {
+			@Override
+			public long run(PathGraph graph) {
+				return multiplicitiesCounter.countPaths(graph, true).getAdditions();
+			}
+		});
+		algorithms.add(new Algorithm("DFSPathCounter", true) {
+			@Override
+			public long run(PathGraph graph) {
+				return dfsCounter.countPaths(graph).getAdditions();
+			}
+		});
+		algorithms.add(new Algorithm("DFSPathEnumerator", true) {
+			@Override
+			public long run(PathGraph graph) {
+				return enumerator.enumeratePaths(graph, new PathVisitor() {
+					@Override
+					public boolean visit(long[] path, int length) {
+						sink += path[length - 1];
+						return true;
+					}
+				});
+			}
+		});
+		return algorithms;
+	}
+
+	/**
+	 * Measures the given algorithm on the given graph or returns null if the
+	 * algorithm was skipped
+	 * @param graph
+	 * @param paths
+	 * @param algorithm
+	 * @return
+	 */
+	private Measurement measure(PathGraph graph, BigInteger paths, Algorithm algorithm) {
+		if(algorithm.walksPaths && paths.compareTo(BigInteger.valueOf(maxWalkedPaths)) > 0) {
+			return null;
+		}
+
+		// warmup
+		long start = System.nanoTime();
+		while(System.nanoTime() - start < warmupNanos) {
+			sink += algorithm.run(graph);
+		}
+
+		// measure
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		long startBytes = getAllocatedBytes(threads);
+		long operations = 0;
+		start = System.nanoTime();
+		long elapsed;
+		do {
+			sink += algorithm.run(graph);
+			operations++;
+			elapsed = System.nanoTime() - start;
+		} while(elapsed < measureNanos);
+		long endBytes = getAllocatedBytes(threads);
+		long bytes = (startBytes < 0 || endBytes < 0) ? -1 : endBytes - startBytes;
+		return new Measurement(operations, elapsed, bytes);
+	}
+
+	/**
+	 * Returns the number of bytes allocated by the current thread or -1 if not supported
+	 * @param threads
+	 * @return
+	 */
+	private static long getAllocatedBytes(ThreadMXBean threads) {
+		if(threads instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+			if(allocations.isThreadAllocatedMemorySupported() && allocations.isThreadAllocatedMemoryEnabled()) {
+				return allocations.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the accumulated results, this only exists so that the
+	 * benchmarked work is observable
+	 * @return
+	 */
+	public long getSink() {
+		return sink;
+	}
+
+	/**
+	 * A benchmarked graph
+	 */
+	protected static class Shape {
+		private final String name;
+		private final PathGraph graph;
+		private final BigInteger paths;
+
+		public Shape(String name, PathGraph graph) {
+			this.name = name;
+			this.graph = graph;
+			this.paths = new MultiplicitiesPathCounter().countPaths(graph, true).getExactPaths();
+		}
+	}
+
+	/**
+	 * A benchmarked algorithm
+	 */
+	protected static abstract class Algorithm {
+		private final String name;
+		private final boolean walksPaths;
+
+		/**
+		 * @param name
+		 * @param walksPaths true if the cost of the algorithm is proportional to the number of paths
+		 */
+		public Algorithm(String name, boolean walksPaths) {
+			this.name = name;
+			this.walksPaths = walksPaths;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Runs the algorithm once on the given graph
+		 * @param graph
+		 * @return a value derived from the result
+		 */
+		public abstract long run(PathGraph graph);
+	}
+
+	private static class Measurement {
+		private final long operations;
+		private final long nanos;
+		private final long bytes;
+
+		private Measurement(long operations, long nanos, long bytes) {
+			this.operations = operations;
+			this.nanos = nanos;
+			this.bytes = bytes;
+		}
+
+		private double getOperationsPerSecond() {
+			return operations / (nanos / 1e9);
+		}
+
+		private double getNanosPerOperation() {
+			return (double) nanos / operations;
+		}
+
+		private double getBytesPerOperation() {
+			return (double) bytes / operations;
+		}
+	}
+
+}
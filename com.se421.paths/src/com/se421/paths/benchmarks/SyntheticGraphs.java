@@ -0,0 +1,131 @@
+package com.se421.paths.benchmarks;
+
+import com.se421.paths.graph.PrimitiveGraph;
+
+/**
+ * Generators of synthetic control flow graphs with characteristic shapes for
+ * exercising the path algorithms without an Atlas index. Each node is given
+ * its id + 1 as its line number.
+ */
+public final class SyntheticGraphs {
+
+	// hide constructor
+	private SyntheticGraphs() {}
+
+	/**
+	 * A chain of if-else statements, the number of paths doubles with each
+	 * diamond (2^diamonds paths)
+	 *
+	 * @param diamonds
+	 * @return
+	 */
+	public static PrimitiveGraph diamondChain(int diamonds) {
+		PrimitiveGraph.Builder builder = new PrimitiveGraph.Builder();
+		int join = addNode(builder);
+		for(int i=0; i<diamonds; i++) {
+			int left = addNode(builder);
+			int right = addNode(builder);
+			int next = addNode(builder);
+			builder.addEdge(join, left).addEdge(join, right);
+			builder.addEdge(left, next).addEdge(right, next);
+			join = next;
+		}
+		return builder.build();
+	}
+
+	/**
+	 * A nest of while loops where the innermost loop body is an if-else
+	 * statement, each nested loop contributes one back edge
+	 *
+	 * @param depth the number of nested loops
+	 * @return
+	 */
+	public static PrimitiveGraph loopNest(int depth) {
+		PrimitiveGraph.Builder builder = new PrimitiveGraph.Builder();
+		int entry = addNode(builder);
+		int[] headers = new int[depth];
+		int[] exits = new int[depth];
+		int predecessor = entry;
+		for(int i=0; i<depth; i++) {
+			headers[i] = addNode(builder);
+			exits[i] = addNode(builder);
+			builder.addEdge(predecessor, headers[i]);
+			builder.addEdge(headers[i], exits[i]);
+			predecessor = headers[i];
+		}
+
+		// the innermost loop body
+		int left = addNode(builder);
+		int right = addNode(builder);
+		int latch = addNode(builder);
+		builder.addEdge(predecessor, left).addEdge(predecessor, right);
+		builder.addEdge(left, latch).addEdge(right, latch);
+		builder.addBackEdge(latch, headers[depth - 1]);
+
+		// the exit of each inner loop continues the enclosing loop
+		for(int i=1; i<depth; i++) {
+			builder.addBackEdge(exits[i], headers[i - 1]);
+		}
+		int end = addNode(builder);
+		builder.addEdge(exits[0], end);
+		return builder.build();
+	}
+
+	/**
+	 * A sequence of switch statements, the number of paths is cases^switches
+	 *
+	 * @param switches
+	 * @param cases
+	 * @return
+	 */
+	public static PrimitiveGraph switchChain(int switches, int cases) {
+		PrimitiveGraph.Builder builder = new PrimitiveGraph.Builder();
+		int join = addNode(builder);
+		for(int i=0; i<switches; i++) {
+			int next = addNode(builder);
+			for(int c=0; c<cases; c++) {
+				int body = addNode(builder);
+				builder.addEdge(join, body).addEdge(body, next);
+			}
+			join = next;
+		}
+		return builder.build();
+	}
+
+	/**
+	 * A sequence of loops written with gotos, each loop body is a chain of
+	 * if statements that conditionally jump back to the loop header, so the
+	 * graph has many back edges per loop
+	 *
+	 * @param loops
+	 * @param gotos the number of conditional jumps back to the header per loop
+	 * @return
+	 */
+	public static PrimitiveGraph gotoLoops(int loops, int gotos) {
+		PrimitiveGraph.Builder builder = new PrimitiveGraph.Builder();
+		int predecessor = addNode(builder);
+		for(int i=0; i<loops; i++) {
+			int header = addNode(builder);
+			int exit = addNode(builder);
+			builder.addEdge(predecessor, header);
+			builder.addEdge(header, exit);
+			int statement = header;
+			for(int g=0; g<gotos; g++) {
+				int condition = addNode(builder);
+				builder.addEdge(statement, condition);
+				builder.addBackEdge(condition, header);
+				statement = condition;
+			}
+			int latch = addNode(builder);
+			builder.addEdge(statement, latch);
+			builder.addBackEdge(latch, header);
+			predecessor = exit;
+		}
+		return builder.build();
+	}
+
+	private static int addNode(PrimitiveGraph.Builder builder) {
+		return builder.addNode(builder.size() + 1);
+	}
+
+}
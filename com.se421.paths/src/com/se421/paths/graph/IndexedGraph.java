@@ -0,0 +1,164 @@
+package com.se421.paths.graph;
+
+import java.util.HashMap;
+
+import com.ensoftcorp.atlas.core.db.graph.Edge;
+import com.ensoftcorp.atlas.core.db.graph.Graph;
+import com.ensoftcorp.atlas.core.db.graph.Node;
+import com.ensoftcorp.atlas.core.query.Q;
+import com.ensoftcorp.atlas.core.xcsg.XCSG;
+import com.se421.paths.support.FormattedSourceCorrespondence;
+
+/**
+ * An immutable snapshot of an Atlas graph in compressed sparse row (CSR) form,
+ * this is the Atlas adapter of PathGraph.
+ *
+ * Each node is assigned a dense integer id in [0, size()) and the successors
+ * of node i are stored contiguously, so algorithms can sweep the graph with
+ * primitive arrays instead of issuing an Atlas query per node or edge. The
+ * snapshot is taken with a single evaluation of the given graph. Edges tagged
+ * as control flow back edges are reported as back edges and line numbers are
+ * resolved from the source correspondence of each node on demand.
+ */
+public class IndexedGraph extends PrimitiveGraph {
+
+	private final Node[] nodes;
+	private final HashMap<Node,Integer> ids;
+	private final Edge[] outEdges;
+
+	// on demand cache of node line numbers
+	private final Long[] lineNumbers;
+
+	private IndexedGraph(Node[] nodes, HashMap<Node,Integer> ids, int[] edgeSources, int[] edgeTargets, Edge[] edges, int edgeCount) {
+		super(nodes.length, edgeSources, edgeTargets, getBackEdges(edges, edgeCount), edgeCount, null);
+		this.nodes = nodes;
+		this.ids = ids;
+		this.lineNumbers = new Long[nodes.length];
+
+		// place the Atlas edges into the same slots as the edge targets
+		int[] next = new int[nodes.length];
+		System.arraycopy(outOffsets, 0, next, 0, nodes.length);
+		outEdges = new Edge[edgeCount];
+		for(int i=0; i<edgeCount; i++) {
+			outEdges[next[edgeSources[i]]++] = edges[i];
+		}
+	}
+
+	private static boolean[] getBackEdges(Edge[] edges, int edgeCount) {
+		boolean[] backEdges = new boolean[edgeCount];
+		for(int i=0; i<edgeCount; i++) {
+			backEdges[i] = edges[i] != null && edges[i].taggedWith(XCSG.ControlFlowBackEdge);
+		}
+		return backEdges;
+	}
+
+	/**
+	 * Snapshots the given graph
+	 * @param graph
+	 * @return
+	 */
+	public static IndexedGraph of(Q graph) {
+		return of(graph.eval());
+	}
+
+	/**
+	 * Snapshots the given graph
+	 * @param graph
+	 * @return
+	 */
+	public static IndexedGraph of(Graph graph) {
+		int size = (int) graph.nodes().size();
+		Node[] nodes = new Node[size];
+		HashMap<Node,Integer> ids = new HashMap<Node,Integer>(size * 2);
+		int id = 0;
+		for(Node node : graph.nodes()) {
+			nodes[id] = node;
+			ids.put(node, id++);
+		}
+
+		// collect the edge endpoints
+		int maxEdges = (int) graph.edges().size();
+		int[] edgeSources = new int[maxEdges];
+		int[] edgeTargets = new int[maxEdges];
+		Edge[] edges = new Edge[maxEdges];
+		int edgeCount = 0;
+		for(Edge edge : graph.edges()) {
+			Integer from = ids.get(edge.from());
+			Integer to = ids.get(edge.to());
+			if(from == null || to == null) {
+				// edge is dangling with respect to this graph's nodes
+				continue;
+			}
+			edgeSources[edgeCount] = from;
+			edgeTargets[edgeCount] = to;
+			edges[edgeCount] = edge;
+			edgeCount++;
+		}
+
+		return new IndexedGraph(nodes, ids, edgeSources, edgeTargets, edges, edgeCount);
+	}
+
+	/**
+	 * Creates a graph over the given nodes from the given edge endpoints (node
+	 * indices). An edge may have a null Atlas edge if it only exists in this
+	 * graph, for example an edge added by a transformation.
+	 * @param nodes
+	 * @param edgeSources
+	 * @param edgeTargets
+	 * @param edges
+	 * @param edgeCount the number of edges to read from the edge arrays
+	 * @return
+	 */
+	public static IndexedGraph of(Node[] nodes, int[] edgeSources, int[] edgeTargets, Edge[] edges, int edgeCount) {
+		HashMap<Node,Integer> ids = new HashMap<Node,Integer>(nodes.length * 2);
+		for(int id=0; id<nodes.length; id++) {
+			ids.put(nodes[id], id);
+		}
+		return new IndexedGraph(nodes.clone(), ids, edgeSources, edgeTargets, edges, edgeCount);
+	}
+
+	/**
+	 * Returns the starting line number of the given node or -1 if the node does
+	 * not have a source correspondence
+	 */
+	@Override
+	public long getLineNumber(int node) {
+		Long lineNumber = lineNumbers[node];
+		if(lineNumber == null) {
+			lineNumber = FormattedSourceCorrespondence.getStartLineNumber(nodes[node]);
+			lineNumbers[node] = lineNumber;
+		}
+		return lineNumber;
+	}
+
+	/**
+	 * Returns the Atlas node with the given id
+	 * @param node
+	 * @return
+	 */
+	public Node getNode(int node) {
+		return nodes[node];
+	}
+
+	/**
+	 * Returns the Atlas edge corresponding to the index'th outgoing edge of the given node
+	 * or null if the edge only exists in this graph
+	 * @param node
+	 * @param index
+	 * @return
+	 */
+	public Edge getEdge(int node, int index) {
+		return outEdges[outOffsets[node] + index];
+	}
+
+	/**
+	 * Returns the id of the given Atlas node or -1 if the node is not in the graph
+	 * @param node
+	 * @return
+	 */
+	public int getId(Node node) {
+		Integer id = ids.get(node);
+		return id == null ? -1 : id;
+	}
+
+}
@@ -0,0 +1,76 @@
+package com.se421.paths.graph;
+
+/**
+ * A minimal, Atlas independent view of a control flow graph for the path
+ * algorithms.
+ *
+ * Nodes are identified by dense integer ids in [0, size()) and the outgoing
+ * edges of each node are identified by their index in [0, outDegree(node)).
+ * Parallel edges are allowed (and count as distinct paths).
+ */
+public interface PathGraph {
+
+	/**
+	 * Returns the number of nodes in the graph
+	 * @return
+	 */
+	public int size();
+
+	/**
+	 * Returns the number of edges in the graph
+	 * @return
+	 */
+	public int edgeCount();
+
+	/**
+	 * Returns the number of outgoing edges of the given node
+	 * @param node
+	 * @return
+	 */
+	public int outDegree(int node);
+
+	/**
+	 * Returns the target of the index'th outgoing edge of the given node
+	 * @param node
+	 * @param index
+	 * @return
+	 */
+	public int successor(int node, int index);
+
+	/**
+	 * Returns true if the index'th outgoing edge of the given node is a control
+	 * flow back edge (an edge that closes a loop)
+	 * @param node
+	 * @param index
+	 * @return
+	 */
+	public boolean isBackEdge(int node, int index);
+
+	/**
+	 * Returns the number of incoming edges of the given node
+	 * @param node
+	 * @return
+	 */
+	public int inDegree(int node);
+
+	/**
+	 * Returns true if the given node has no outgoing edges
+	 * @param node
+	 * @return
+	 */
+	public boolean isLeaf(int node);
+
+	/**
+	 * Returns the ids of the nodes without incoming edges
+	 * @return
+	 */
+	public int[] roots();
+
+	/**
+	 * Returns the starting source line number of the given node or -1 if it is unknown
+	 * @param node
+	 * @return
+	 */
+	public long getLineNumber(int node);
+
+}
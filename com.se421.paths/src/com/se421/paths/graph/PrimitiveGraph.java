@@ -0,0 +1,311 @@
+package com.se421.paths.graph;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * An immutable, Atlas independent graph in compressed sparse row (CSR) form.
+ *
+ * The successors of node i are stored contiguously, so algorithms can sweep
+ * the graph with primitive arrays. Graphs can be created with a Builder or
+ * read from the simple line oriented text format produced by write:
+ *
+ * nodes 4
+ * line 0 12
+ * edge 0 1
+ * edge 1 2
+ * back 2 1
+ * edge 1 3
+ *
+ * Each "line" record gives the source line number of a node (nodes without
+ * a record have an unknown line number), each "edge" record gives an edge
+ * and each "back" record gives a control flow back edge. Lines starting with
+ * # are ignored.
+ */
+public class PrimitiveGraph implements PathGraph {
+
+	// the outgoing edges of node i occupy the slots [outOffsets[i], outOffsets[i+1])
+	protected final int[] outOffsets;
+	protected final int[] outTargets;
+	protected final boolean[] backEdges;
+
+	protected final int[] inDegrees;
+
+	private final long[] lineNumbers;
+
+	/**
+	 * Creates a graph from the given edge endpoints (node indices)
+	 * @param size the number of nodes
+	 * @param edgeSources
+	 * @param edgeTargets
+	 * @param edgeBackEdges true for back edges, may be null if there are no back edges
+	 * @param edgeCount the number of edges to read from the edge arrays
+	 * @param lineNumbers the line number of each node, may be null if line numbers are unknown
+	 */
+	protected PrimitiveGraph(int size, int[] edgeSources, int[] edgeTargets, boolean[] edgeBackEdges, int edgeCount, long[] lineNumbers) {
+		outOffsets = new int[size + 1];
+		inDegrees = new int[size];
+		for(int i=0; i<edgeCount; i++) {
+			outOffsets[edgeSources[i] + 1]++;
+			inDegrees[edgeTargets[i]]++;
+		}
+
+		// prefix sum the out degrees into offsets and then place each edge
+		// into its slot (a stable counting sort, so edge order is preserved)
+		for(int i=0; i<size; i++) {
+			outOffsets[i + 1] += outOffsets[i];
+		}
+		int[] next = new int[size];
+		System.arraycopy(outOffsets, 0, next, 0, size);
+		outTargets = new int[edgeCount];
+		backEdges = new boolean[edgeCount];
+		for(int i=0; i<edgeCount; i++) {
+			int slot = next[edgeSources[i]]++;
+			outTargets[slot] = edgeTargets[i];
+			backEdges[slot] = edgeBackEdges != null && edgeBackEdges[i];
+		}
+
+		this.lineNumbers = lineNumbers;
+	}
+
+	@Override
+	public int size() {
+		return inDegrees.length;
+	}
+
+	@Override
+	public int edgeCount() {
+		return outTargets.length;
+	}
+
+	@Override
+	public int outDegree(int node) {
+		return outOffsets[node + 1] - outOffsets[node];
+	}
+
+	@Override
+	public int successor(int node, int index) {
+		return outTargets[outOffsets[node] + index];
+	}
+
+	@Override
+	public boolean isBackEdge(int node, int index) {
+		return backEdges[outOffsets[node] + index];
+	}
+
+	@Override
+	public int inDegree(int node) {
+		return inDegrees[node];
+	}
+
+	@Override
+	public boolean isLeaf(int node) {
+		return outOffsets[node + 1] == outOffsets[node];
+	}
+
+	@Override
+	public int[] roots() {
+		int count = 0;
+		for(int i=0; i<inDegrees.length; i++) {
+			if(inDegrees[i] == 0) {
+				count++;
+			}
+		}
+		int[] roots = new int[count];
+		count = 0;
+		for(int i=0; i<inDegrees.length; i++) {
+			if(inDegrees[i] == 0) {
+				roots[count++] = i;
+			}
+		}
+		return roots;
+	}
+
+	@Override
+	public long getLineNumber(int node) {
+		return lineNumbers == null ? -1 : lineNumbers[node];
+	}
+
+	/**
+	 * Writes the given graph in the text format read by read
+	 *
+	 * Example Atlas Shell Usage:
+	 * var writer = new java.io.FileWriter("/tmp/dskqopt.cfg")
+	 * PrimitiveGraph.write(IndexedGraph.of(cfg(functions("dskqopt"))), writer)
+	 * writer.close()
+	 *
+	 * @param graph
+	 * @param writer
+	 * @throws IOException
+	 */
+	public static void write(PathGraph graph, Writer writer) throws IOException {
+		writer.write("nodes " + graph.size() + "\n");
+		for(int node=0; node<graph.size(); node++) {
+			long lineNumber = graph.getLineNumber(node);
+			if(lineNumber != -1) {
+				writer.write("line " + node + " " + lineNumber + "\n");
+			}
+		}
+		for(int node=0; node<graph.size(); node++) {
+			for(int i=0; i<graph.outDegree(node); i++) {
+				writer.write((graph.isBackEdge(node, i) ? "back " : "edge ") + node + " " + graph.successor(node, i) + "\n");
+			}
+		}
+		writer.flush();
+	}
+
+	/**
+	 * Reads a graph in the text format produced by write
+	 * @param reader
+	 * @return
+	 * @throws IOException if the graph is malformed
+	 */
+	public static PrimitiveGraph read(Reader reader) throws IOException {
+		BufferedReader lines = (reader instanceof BufferedReader) ? (BufferedReader) reader : new BufferedReader(reader);
+		Builder builder = null;
+		int lineNumber = 0;
+		String line;
+		while((line = lines.readLine()) != null) {
+			lineNumber++;
+			line = line.trim();
+			if(line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			String[] record = line.split("\\s+");
+			try {
+				if(record[0].equals("nodes") && record.length == 2 && builder == null) {
+					builder = new Builder();
+					int size = Integer.parseInt(record[1]);
+					for(int i=0; i<size; i++) {
+						builder.addNode();
+					}
+				} else if(builder != null && record.length == 3 && record[0].equals("line")) {
+					builder.setLineNumber(Integer.parseInt(record[1]), Long.parseLong(record[2]));
+				} else if(builder != null && record.length == 3 && (record[0].equals("edge") || record[0].equals("back"))) {
+					builder.addEdge(Integer.parseInt(record[1]), Integer.parseInt(record[2]), record[0].equals("back"));
+				} else {
+					throw new IOException("Unexpected record on line " + lineNumber + ": " + line);
+				}
+			} catch (IllegalArgumentException e) {
+				throw new IOException("Malformed record on line " + lineNumber + ": " + line, e);
+			}
+		}
+		if(builder == null) {
+			throw new IOException("Missing nodes record.");
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Incrementally builds a PrimitiveGraph
+	 */
+	public static class Builder {
+		private int size = 0;
+		private long[] lineNumbers = new long[16];
+		private int edgeCount = 0;
+		private int[] edgeSources = new int[16];
+		private int[] edgeTargets = new int[16];
+		private boolean[] edgeBackEdges = new boolean[16];
+
+		/**
+		 * Adds a node with an unknown line number
+		 * @return the id of the new node
+		 */
+		public int addNode() {
+			return addNode(-1);
+		}
+
+		/**
+		 * Adds a node with the given line number
+		 * @param lineNumber
+		 * @return the id of the new node
+		 */
+		public int addNode(long lineNumber) {
+			if(size == lineNumbers.length) {
+				lineNumbers = Arrays.copyOf(lineNumbers, size * 2);
+			}
+			lineNumbers[size] = lineNumber;
+			return size++;
+		}
+
+		/**
+		 * Sets the line number of an existing node
+		 * @param node
+		 * @param lineNumber
+		 * @return
+		 */
+		public Builder setLineNumber(int node, long lineNumber) {
+			checkNode(node);
+			lineNumbers[node] = lineNumber;
+			return this;
+		}
+
+		/**
+		 * Adds an edge between two existing nodes
+		 * @param from
+		 * @param to
+		 * @return
+		 */
+		public Builder addEdge(int from, int to) {
+			return addEdge(from, to, false);
+		}
+
+		/**
+		 * Adds a control flow back edge between two existing nodes
+		 * @param from
+		 * @param to
+		 * @return
+		 */
+		public Builder addBackEdge(int from, int to) {
+			return addEdge(from, to, true);
+		}
+
+		/**
+		 * Adds an edge between two existing nodes
+		 * @param from
+		 * @param to
+		 * @param backEdge
+		 * @return
+		 */
+		public Builder addEdge(int from, int to, boolean backEdge) {
+			checkNode(from);
+			checkNode(to);
+			if(edgeCount == edgeSources.length) {
+				edgeSources = Arrays.copyOf(edgeSources, edgeCount * 2);
+				edgeTargets = Arrays.copyOf(edgeTargets, edgeCount * 2);
+				edgeBackEdges = Arrays.copyOf(edgeBackEdges, edgeCount * 2);
+			}
+			edgeSources[edgeCount] = from;
+			edgeTargets[edgeCount] = to;
+			edgeBackEdges[edgeCount] = backEdge;
+			edgeCount++;
+			return this;
+		}
+
+		private void checkNode(int node) {
+			if(node < 0 || node >= size) {
+				throw new IllegalArgumentException("Node " + node + " does not exist.");
+			}
+		}
+
+		/**
+		 * Returns the number of nodes added so far
+		 * @return
+		 */
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * Builds the graph, the builder may continue to be used afterwards
+		 * @return
+		 */
+		public PrimitiveGraph build() {
+			return new PrimitiveGraph(size, edgeSources, edgeTargets, edgeBackEdges, edgeCount, Arrays.copyOf(lineNumbers, size));
+		}
+	}
+
+}
@@ -5,6 +5,14 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.ensoftcorp.atlas.core.db.graph.Node;
 import com.ensoftcorp.atlas.core.log.Log;
@@ -14,66 +22,163 @@ import com.ensoftcorp.atlas.core.script.CommonQueries;
 import com.ensoftcorp.atlas.core.xcsg.XCSG;
 import com.se421.paths.algorithms.PathCounter.CountingResult;
 import com.se421.paths.algorithms.counting.DFSPathCounter;
+import com.se421.paths.algorithms.counting.InterproceduralPathCounter;
+import com.se421.paths.algorithms.counting.InterproceduralPathCounter.InterproceduralCountingResult;
 import com.se421.paths.algorithms.counting.MultiplicitiesPathCounter;
+import com.se421.paths.graph.IndexedGraph;
 import com.se421.paths.support.SetDefinitions;
+import com.se421.paths.transforms.DAGTransform;
 
 /*
  * Use this code to export results of your implementation
- * 
+ *
+ * Functions are counted in parallel on a bounded thread pool, each function
+ * is transformed to a DAG once and the DAG is shared by both counters. Rows
+ * are written in function order and flushed in batches. The inclusive
+ * (interprocedural) path counts of all functions are computed up front in a
+ * single bottom up pass over the call graph.
+ *
  * @author Payas Awadhutkar
  */
 
 public class ExportResults {
 
 	protected static final String resultsPath = System.getProperty("user.home") + "/Desktop/Results.csv";
-	
-	protected static final String headers = "Function Name,numPaths (NonLinear),additions (NonLinear),numPaths (Linear),additions (Linear)\n";
-	
+
+	protected static final String headers = "Function Name,numPaths (NonLinear),additions (NonLinear),numPaths (Linear),additions (Linear),numPaths (Interprocedural)\n";
+
+	// the number of rows to buffer between flushes
+	protected static final int batchSize = 256;
+
+	/**
+	 * Exports the results to ~/Desktop/Results.csv using one thread per available processor
+	 */
 	public static void export() {
-		try {
-			File results = new File(resultsPath);
-			BufferedWriter resultsWriter = new BufferedWriter(new FileWriter(results));
+		export(new File(resultsPath));
+	}
+
+	/**
+	 * Exports the results to the given path using one thread per available processor
+	 *
+	 * Example Atlas Shell Usage:
+	 * ExportResults.export("/tmp/Results.csv")
+	 *
+	 * @param resultsPath
+	 */
+	public static void export(String resultsPath) {
+		export(new File(resultsPath));
+	}
+
+	/**
+	 * Exports the results to the given file using one thread per available processor
+	 * @param results
+	 */
+	public static void export(File results) {
+		export(results, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Exports the results to the given file using the given number of threads
+	 * @param results
+	 * @param threads
+	 */
+	public static void export(File results, int threads) {
+		if(threads < 1) {
+			throw new IllegalArgumentException("At least one thread is required.");
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try (BufferedWriter resultsWriter = new BufferedWriter(new FileWriter(results))) {
 			resultsWriter.write(headers);
-			DFSPathCounter nonLinearCounter = new DFSPathCounter();
-			MultiplicitiesPathCounter linearCounter = new MultiplicitiesPathCounter();
-			
+			final DFSPathCounter nonLinearCounter = new DFSPathCounter();
+			final MultiplicitiesPathCounter linearCounter = new MultiplicitiesPathCounter();
+
 			// We will now generate the results for all the functions in the graph database.
 			// It is assumed that you have XINU mapped into Atlas before you run this code.
 			Q app = SetDefinitions.app();
 			Q functions = app.nodes(XCSG.Function);
-			for(Node function : functions.eval().nodes()) {
-				Q cfg = CommonQueries.cfg(Common.toQ(function));
-				CountingResult nonLinear = nonLinearCounter.countPaths(cfg);
-				CountingResult linear = linearCounter.countPaths(cfg);
-				
-				// function name
-				resultsWriter.write(function.getAttr(XCSG.name) + ",");
-				
-				// number of paths according to nonLinear algorithm
-				resultsWriter.write(nonLinear.getPaths() + ",");
-				
-				// number of additions by nonLinear algorithm
-				resultsWriter.write(nonLinear.getAdditions() + ",");
-				
-				// number of paths according to linear algorithm
-				resultsWriter.write(linear.getPaths() + ",");
-				
-				// number of additions by linear algorithm
-				resultsWriter.write(linear.getAdditions() + "\n");
-				
+			final InterproceduralCountingResult interprocedural = new InterproceduralPathCounter(InterproceduralPathCounter.DEFAULT_RECURSION_BOUND, threads).countPaths(functions);
+			List<Node> submittedFunctions = new ArrayList<Node>();
+			List<Future<String>> rows = new ArrayList<Future<String>>();
+			for(final Node function : functions.eval().nodes()) {
+				submittedFunctions.add(function);
+				rows.add(executor.submit(new Callable<String>() {
+					@Override
+					public String call() throws Exception {
+						return getRow(function, nonLinearCounter, linearCounter, interprocedural);
+					}
+				}));
+			}
+
+			// write the rows in function order as they complete
+			int bufferedRows = 0;
+			for(int i=0; i<rows.size(); i++) {
+				try {
+					resultsWriter.write(rows.get(i).get());
+				} catch (ExecutionException e) {
+					Node function = submittedFunctions.get(i);
+					Log.error("Unable to count paths of " + function.getAttr(XCSG.name), e.getCause());
+					continue;
+				}
+
 				// flushing the buffer
-				resultsWriter.flush();
+				if(++bufferedRows == batchSize) {
+					resultsWriter.flush();
+					bufferedRows = 0;
+				}
 			}
-			
-			resultsWriter.close();
-			
 		} catch(FileNotFoundException e) {
 			Log.error(e.getMessage(), e);
 		} catch(IOException e) {
 			Log.error(e.getMessage(), e);
+		} catch(InterruptedException e) {
+			Log.error("Export was interrupted", e);
+			Thread.currentThread().interrupt();
 		} finally {
-			
+			executor.shutdownNow();
 		}
 	}
-	
+
+	/**
+	 * Counts the paths of the given function with both counters and returns the CSV row
+	 * @param function
+	 * @param nonLinearCounter
+	 * @param linearCounter
+	 * @param interprocedural
+	 * @return
+	 */
+	private static String getRow(Node function, DFSPathCounter nonLinearCounter, MultiplicitiesPathCounter linearCounter, InterproceduralCountingResult interprocedural) {
+		Q cfg = CommonQueries.cfg(Common.toQ(function));
+
+		// create a directed acyclic graph (DAG) once and share it between both counters
+		// note: the DAG is a private snapshot, so the universe graph is not modified
+		DAGTransform transformer = new DAGTransform();
+		IndexedGraph dag = transformer.transformToIndexedGraph(cfg);
+		CountingResult nonLinear = nonLinearCounter.countPaths(dag);
+		CountingResult linear = linearCounter.countPaths(dag, true);
+
+		StringBuilder row = new StringBuilder();
+
+		// function name
+		row.append(function.getAttr(XCSG.name) + ",");
+
+		// number of paths according to nonLinear algorithm
+		row.append(nonLinear.getPaths() + ",");
+
+		// number of additions by nonLinear algorithm
+		row.append(nonLinear.getAdditions() + ",");
+
+		// number of paths according to linear algorithm
+		row.append(linear.getExactPaths() + ",");
+
+		// number of additions by linear algorithm
+		row.append(linear.getAdditions() + ",");
+
+		// number of paths including the paths of callees
+		BigInteger inclusivePaths = interprocedural.getPaths(function);
+		// note: functions that could not be counted interprocedurally are marked with a "-"
+		row.append((inclusivePaths != null ? inclusivePaths.toString() : "-") + "\n");
+
+		return row.toString();
+	}
+
 }
@@ -0,0 +1,442 @@
+package com.se421.paths.support;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.ensoftcorp.atlas.core.db.graph.Edge;
+import com.ensoftcorp.atlas.core.db.graph.Node;
+import com.ensoftcorp.atlas.core.db.set.AtlasHashSet;
+import com.ensoftcorp.atlas.core.db.set.AtlasSet;
+import com.ensoftcorp.atlas.core.query.Q;
+import com.ensoftcorp.atlas.core.script.Common;
+import com.ensoftcorp.atlas.core.xcsg.XCSG;
+
+/**
+ * A snapshot of the call graph (XCSG.Call edges of the code map) as forward
+ * and reverse compressed sparse row (CSR) arrays along with its strongly
+ * connected components (recursive cycles of functions).
+ *
+ * Sets of functions are represented as bit sets of function ids, so call
+ * graph queries such as reachability and the matching pair graph are bit
+ * set operations instead of chains of Atlas queries.
+ *
+ * The snapshot is built once per Atlas index and held until the cache is
+ * cleared (the plugin activator clears it whenever the index changes).
+ */
+public class CallGraphIndex {
+
+	private static volatile CallGraphIndex instance = null;
+
+	private final HashMap<Node,Integer> ids;
+	private final Node[] functions;
+	private final Edge[] edges;
+
+	// callees of function i are callees[calleeOffsets[i]] to callees[calleeOffsets[i+1]-1], calleeEdges are the corresponding edges
+	private final int[] calleeOffsets;
+	private final int[] callees;
+	private final int[] calleeEdges;
+
+	// callers of function i are callers[callerOffsets[i]] to callers[callerOffsets[i+1]-1]
+	private final int[] callerOffsets;
+	private final int[] callers;
+
+	// the strongly connected component of each function, components are numbered in reverse topological order (callees first)
+	private final int[] components;
+	private final int componentCount;
+	private final boolean[] recursiveComponents;
+
+	private CallGraphIndex(AtlasSet<Edge> callEdges) {
+		this.ids = new HashMap<Node,Integer>();
+		this.edges = new Edge[(int) callEdges.size()];
+		int[] sources = new int[edges.length];
+		int[] targets = new int[edges.length];
+		int edgeCount = 0;
+		for(Edge edge : callEdges) {
+			edges[edgeCount] = edge;
+			sources[edgeCount] = getOrCreateId(edge.from());
+			targets[edgeCount] = getOrCreateId(edge.to());
+			edgeCount++;
+		}
+		this.functions = new Node[ids.size()];
+		for(Map.Entry<Node,Integer> entry : ids.entrySet()) {
+			functions[entry.getValue()] = entry.getKey();
+		}
+
+		int size = functions.length;
+		this.calleeOffsets = new int[size + 1];
+		this.callees = new int[edgeCount];
+		this.calleeEdges = new int[edgeCount];
+		compile(size, edgeCount, sources, targets, calleeOffsets, callees, calleeEdges);
+		this.callerOffsets = new int[size + 1];
+		this.callers = new int[edgeCount];
+		compile(size, edgeCount, targets, sources, callerOffsets, callers, new int[edgeCount]);
+
+		this.components = new int[size];
+		this.componentCount = computeComponents();
+		this.recursiveComponents = new boolean[componentCount];
+		for(int function=0; function<size; function++) {
+			for(int position=calleeOffsets[function]; position<calleeOffsets[function + 1]; position++) {
+				// a component is recursive if it has an internal call edge (including a self call)
+				if(components[callees[position]] == components[function]) {
+					recursiveComponents[components[function]] = true;
+				}
+			}
+		}
+	}
+
+	private int getOrCreateId(Node node) {
+		Integer id = ids.get(node);
+		if(id == null) {
+			id = ids.size();
+			ids.put(node, id);
+		}
+		return id;
+	}
+
+	/**
+	 * Counting sort of the edges by their from node into compressed sparse row arrays
+	 */
+	private static void compile(int size, int edgeCount, int[] from, int[] to, int[] offsets, int[] adjacent, int[] adjacentEdges) {
+		for(int e=0; e<edgeCount; e++) {
+			offsets[from[e] + 1]++;
+		}
+		for(int i=0; i<size; i++) {
+			offsets[i + 1] += offsets[i];
+		}
+		int[] next = Arrays.copyOf(offsets, size);
+		for(int e=0; e<edgeCount; e++) {
+			int position = next[from[e]]++;
+			adjacent[position] = to[e];
+			adjacentEdges[position] = e;
+		}
+	}
+
+	/**
+	 * Computes the strongly connected components with an iterative version
+	 * of Tarjan's algorithm
+	 * @return the number of components
+	 */
+	private int computeComponents() {
+		int size = functions.length;
+		int[] indexes = new int[size];
+		int[] lowLinks = new int[size];
+		Arrays.fill(indexes, -1);
+		boolean[] onStack = new boolean[size];
+		int[] stack = new int[size];
+		int stackSize = 0;
+		int[] callStack = new int[size];
+		int[] positions = new int[size];
+		int index = 0;
+		int count = 0;
+		for(int root=0; root<size; root++) {
+			if(indexes[root] != -1) {
+				continue;
+			}
+			int top = 0;
+			callStack[top] = root;
+			positions[top] = calleeOffsets[root];
+			indexes[root] = lowLinks[root] = index++;
+			stack[stackSize++] = root;
+			onStack[root] = true;
+			while(top >= 0) {
+				int function = callStack[top];
+				if(positions[top] < calleeOffsets[function + 1]) {
+					int callee = callees[positions[top]++];
+					if(indexes[callee] == -1) {
+						indexes[callee] = lowLinks[callee] = index++;
+						stack[stackSize++] = callee;
+						onStack[callee] = true;
+						top++;
+						callStack[top] = callee;
+						positions[top] = calleeOffsets[callee];
+					} else if(onStack[callee]) {
+						lowLinks[function] = Math.min(lowLinks[function], indexes[callee]);
+					}
+				} else {
+					if(lowLinks[function] == indexes[function]) {
+						int member;
+						do {
+							member = stack[--stackSize];
+							onStack[member] = false;
+							components[member] = count;
+						} while(member != function);
+						count++;
+					}
+					top--;
+					if(top >= 0) {
+						int caller = callStack[top];
+						lowLinks[caller] = Math.min(lowLinks[caller], lowLinks[function]);
+					}
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the call graph index of the current Atlas index, building it if necessary
+	 * @return
+	 */
+	public static CallGraphIndex getInstance() {
+		CallGraphIndex index = instance;
+		if(index == null) {
+			synchronized (CallGraphIndex.class) {
+				index = instance;
+				if(index == null) {
+					index = new CallGraphIndex(Common.codemap().edges(XCSG.Call).eval().edges());
+					instance = index;
+				}
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Clears the cached index, this must be done if the Atlas index changes
+	 */
+	public static void clearCache() {
+		synchronized (CallGraphIndex.class) {
+			instance = null;
+		}
+	}
+
+	/**
+	 * Returns the set of the given functions that are in the call graph
+	 * @param functions
+	 * @return
+	 */
+	public BitSet getFunctions(Q functions) {
+		BitSet result = new BitSet(this.functions.length);
+		for(Node function : functions.eval().nodes()) {
+			Integer id = ids.get(function);
+			if(id != null) {
+				result.set(id);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the given set of functions as nodes
+	 * @param functions
+	 * @return
+	 */
+	public AtlasSet<Node> getNodes(BitSet functions) {
+		AtlasSet<Node> nodes = new AtlasHashSet<Node>();
+		for(int id = functions.nextSetBit(0); id >= 0; id = functions.nextSetBit(id + 1)) {
+			nodes.add(this.functions[id]);
+		}
+		return nodes;
+	}
+
+	/**
+	 * Returns the call graph induced on the given set of functions
+	 * @param functions
+	 * @return
+	 */
+	public Q induce(BitSet functions) {
+		AtlasSet<Edge> inducedEdges = new AtlasHashSet<Edge>();
+		for(int id = functions.nextSetBit(0); id >= 0; id = functions.nextSetBit(id + 1)) {
+			for(int position=calleeOffsets[id]; position<calleeOffsets[id + 1]; position++) {
+				if(functions.get(callees[position])) {
+					inducedEdges.add(edges[calleeEdges[position]]);
+				}
+			}
+		}
+		return Common.toQ(getNodes(functions)).union(Common.toQ(inducedEdges));
+	}
+
+	/**
+	 * Returns the functions directly called by the given function
+	 * @param function
+	 * @return
+	 */
+	public AtlasSet<Node> getCallees(Node function) {
+		return getAdjacent(function, calleeOffsets, callees);
+	}
+
+	/**
+	 * Returns the functions directly calling the given function
+	 * @param function
+	 * @return
+	 */
+	public AtlasSet<Node> getCallers(Node function) {
+		return getAdjacent(function, callerOffsets, callers);
+	}
+
+	private AtlasSet<Node> getAdjacent(Node function, int[] offsets, int[] adjacent) {
+		AtlasSet<Node> result = new AtlasHashSet<Node>();
+		Integer id = ids.get(function);
+		if(id != null) {
+			for(int position=offsets[id]; position<offsets[id + 1]; position++) {
+				result.add(functions[adjacent[position]]);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the functions that directly call any of the given functions
+	 * @param functions
+	 * @return
+	 */
+	public BitSet callers(BitSet functions) {
+		return step(functions, callerOffsets, callers);
+	}
+
+	/**
+	 * Returns the functions that are directly called by any of the given functions
+	 * @param functions
+	 * @return
+	 */
+	public BitSet callees(BitSet functions) {
+		return step(functions, calleeOffsets, callees);
+	}
+
+	/**
+	 * Returns the given functions and the functions that transitively call them
+	 * @param functions
+	 * @return
+	 */
+	public BitSet reverse(BitSet functions) {
+		return reach(functions, callerOffsets, callers);
+	}
+
+	/**
+	 * Returns the given functions and the functions they transitively call
+	 * @param functions
+	 * @return
+	 */
+	public BitSet forward(BitSet functions) {
+		return reach(functions, calleeOffsets, callees);
+	}
+
+	private BitSet step(BitSet origins, int[] offsets, int[] adjacent) {
+		BitSet result = new BitSet(functions.length);
+		for(int id = origins.nextSetBit(0); id >= 0; id = origins.nextSetBit(id + 1)) {
+			for(int position=offsets[id]; position<offsets[id + 1]; position++) {
+				result.set(adjacent[position]);
+			}
+		}
+		return result;
+	}
+
+	private BitSet reach(BitSet origins, int[] offsets, int[] adjacent) {
+		BitSet visited = (BitSet) origins.clone();
+		int[] queue = new int[functions.length];
+		int head = 0;
+		int tail = 0;
+		for(int id = origins.nextSetBit(0); id >= 0; id = origins.nextSetBit(id + 1)) {
+			queue[tail++] = id;
+		}
+		while(head < tail) {
+			int function = queue[head++];
+			for(int position=offsets[function]; position<offsets[function + 1]; position++) {
+				int next = adjacent[position];
+				if(!visited.get(next)) {
+					visited.set(next);
+					queue[tail++] = next;
+				}
+			}
+		}
+		return visited;
+	}
+
+	/**
+	 * Returns the matching pair graph (MPG) of the given event functions as a
+	 * set of functions, see HelperQueries.mpg
+	 * @param e1Functions the L (e.g. lock) functions
+	 * @param e2Functions the U (e.g. unlock) functions
+	 * @param callL the functions directly calling an L function that are relevant to the object
+	 * @param callU the functions directly calling a U function that are relevant to the object
+	 * @return
+	 */
+	public BitSet mpg(BitSet e1Functions, BitSet e2Functions, BitSet callL, BitSet callU) {
+		BitSet rcgLock = reverse(callL);
+		BitSet rcgUnlock = reverse(callU);
+		BitSet rcgBoth = (BitSet) rcgLock.clone();
+		rcgBoth.and(rcgUnlock);
+		BitSet rcgC = (BitSet) rcgLock.clone();
+		rcgC.or(rcgUnlock);
+		BitSet rcgLockOnly = (BitSet) rcgLock.clone();
+		rcgLockOnly.andNot(rcgBoth);
+		BitSet rcgUnlockOnly = (BitSet) rcgUnlock.clone();
+		rcgUnlockOnly.andNot(rcgBoth);
+
+		// the direct callers of L or U functions and of functions that only reach one of them
+		BitSet callCOnly = (BitSet) callL.clone();
+		callCOnly.or(callU);
+		callCOnly.or(rcgLockOnly);
+		callCOnly.or(callers(rcgLockOnly));
+		callCOnly.or(rcgUnlockOnly);
+		callCOnly.or(callers(rcgUnlockOnly));
+
+		BitSet balanced = callCOnly;
+		balanced.and(rcgBoth);
+		BitSet ubc = balanced;
+		ubc.or(rcgLockOnly);
+		ubc.or(rcgUnlockOnly);
+
+		BitSet mpg = forward(ubc);
+		mpg.and(rcgC);
+		mpg.or(e1Functions);
+		mpg.or(e2Functions);
+		return mpg;
+	}
+
+	/**
+	 * Returns the strongly connected component number of the given function
+	 * or -1 if the function is not in the call graph, components are
+	 * numbered in reverse topological order (callees before callers)
+	 * @param function
+	 * @return
+	 */
+	public int getComponent(Node function) {
+		Integer id = ids.get(function);
+		return id == null ? -1 : components[id];
+	}
+
+	/**
+	 * Returns the functions in the given strongly connected component
+	 * @param component
+	 * @return
+	 */
+	public AtlasSet<Node> getComponentFunctions(int component) {
+		AtlasSet<Node> members = new AtlasHashSet<Node>();
+		for(int id=0; id<functions.length; id++) {
+			if(components[id] == component) {
+				members.add(functions[id]);
+			}
+		}
+		return members;
+	}
+
+	/**
+	 * Returns the number of strongly connected components
+	 * @return
+	 */
+	public int getComponentCount() {
+		return componentCount;
+	}
+
+	/**
+	 * Returns true if the given function is (mutually) recursive
+	 * @param function
+	 * @return
+	 */
+	public boolean isRecursive(Node function) {
+		Integer id = ids.get(function);
+		return id != null && recursiveComponents[components[id]];
+	}
+
+	/**
+	 * Returns the number of functions in the call graph
+	 * @return
+	 */
+	public int size() {
+		return functions.length;
+	}
+
+}
@@ -0,0 +1,279 @@
+package com.se421.paths.support;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ensoftcorp.atlas.core.db.graph.Edge;
+import com.ensoftcorp.atlas.core.db.graph.Graph;
+import com.ensoftcorp.atlas.core.db.graph.GraphElement.NodeDirection;
+import com.ensoftcorp.atlas.core.db.graph.Node;
+import com.ensoftcorp.atlas.core.xcsg.XCSG;
+
+/**
+ * An index of the containment (XCSG.Contains) tree below a function.
+ *
+ * The index is built once per function with a single traversal of the
+ * function's containment tree. It stores the parent of each contained node
+ * along with its nearest containing control flow node and function, so that
+ * the containing node lookups of HelperQueries do not need to walk up the
+ * containment edges of the universe graph one node at a time.
+ *
+ * Indexes are kept in a size bounded, least recently used cache keyed by the
+ * address of the function. Every node of a cached index is also mapped to its
+ * index, so looking up the index of a node that has been indexed before takes
+ * no graph walk and no lock. The node entries of an index are dropped when it
+ * is evicted. Note: lookups by node do not refresh the recency of an index,
+ * only lookups by function do. The cache must be cleared whenever the Atlas
+ * index changes, since node addresses are not stable across index builds (the
+ * plugin activator takes care of this).
+ */
+public class ContainmentIndex {
+
+	public static final int DEFAULT_CAPACITY = 256;
+
+	private static int capacity = DEFAULT_CAPACITY;
+	private static final AtomicLong hits = new AtomicLong();
+	private static final AtomicLong misses = new AtomicLong();
+
+	// the index of each node of the cached indexes, entries are only added or removed while holding the cache lock
+	private static final ConcurrentHashMap<Node,ContainmentIndex> nodeIndexes = new ConcurrentHashMap<Node,ContainmentIndex>();
+
+	private static final LinkedHashMap<String,ContainmentIndex> cache = new LinkedHashMap<String,ContainmentIndex>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String,ContainmentIndex> eldest) {
+			if(size() > capacity) {
+				eldest.getValue().unregister();
+				return true;
+			}
+			return false;
+		}
+	};
+
+	private final Node function;
+	private final HashMap<Node,Integer> ids;
+	private final Node[] nodes;
+	private final int[] parents;
+	private final Node[] containingControlFlowNodes;
+	private final Node[] containingFunctions;
+
+	private ContainmentIndex(Node function) {
+		this.function = function;
+
+		// the containment tree of the function in breadth first order, the function has id 0
+		ArrayList<Node> tree = new ArrayList<Node>();
+		ArrayList<Integer> treeParents = new ArrayList<Integer>();
+		HashMap<Node,Integer> ids = new HashMap<Node,Integer>();
+		tree.add(function);
+		treeParents.add(-1);
+		ids.put(function, 0);
+		for(int i=0; i<tree.size(); i++) {
+			for(Edge containsEdge : Graph.U.edges(tree.get(i), NodeDirection.OUT)) {
+				if(!containsEdge.taggedWith(XCSG.Contains)) {
+					continue;
+				}
+				Node child = containsEdge.to();
+				if(!ids.containsKey(child)) {
+					ids.put(child, tree.size());
+					tree.add(child);
+					treeParents.add(i);
+				}
+			}
+		}
+
+		this.ids = ids;
+		this.nodes = tree.toArray(new Node[tree.size()]);
+		this.parents = new int[nodes.length];
+		this.containingControlFlowNodes = new Node[nodes.length];
+		this.containingFunctions = new Node[nodes.length];
+
+		// the function's own containing nodes are outside of the tree
+		parents[0] = -1;
+		containingControlFlowNodes[0] = HelperQueries.getContainingNode(function, XCSG.ControlFlow_Node);
+		containingFunctions[0] = HelperQueries.getContainingNode(function, XCSG.Function);
+
+		// parents precede their children, so each nearest ancestor is derived from the parent's
+		for(int id=1; id<nodes.length; id++) {
+			int parent = treeParents.get(id);
+			Node parentNode = nodes[parent];
+			parents[id] = parent;
+			containingControlFlowNodes[id] = parentNode.taggedWith(XCSG.ControlFlow_Node) ? parentNode : containingControlFlowNodes[parent];
+			containingFunctions[id] = parentNode.taggedWith(XCSG.Function) ? parentNode : containingFunctions[parent];
+		}
+	}
+
+	/**
+	 * Returns the containment index of the function containing the given node,
+	 * building it if necessary, or null if the node is not contained by a function
+	 * @param node
+	 * @return
+	 */
+	public static ContainmentIndex getIndex(Node node) {
+		ContainmentIndex index = nodeIndexes.get(node);
+		if(index != null) {
+			hits.incrementAndGet();
+			return index;
+		}
+		// the node has not been indexed yet, a single walk up the containment edges finds its function
+		Node function = HelperQueries.getContainingNode(node, XCSG.Function);
+		if(function == null) {
+			return null;
+		}
+		return getFunctionIndex(function);
+	}
+
+	/**
+	 * Returns the containment index of the given function, building it if necessary
+	 * @param function
+	 * @return
+	 */
+	public static ContainmentIndex getFunctionIndex(Node function) {
+		String key = function.address().toAddressString();
+		synchronized (cache) {
+			ContainmentIndex index = cache.get(key);
+			if(index != null) {
+				hits.incrementAndGet();
+				return index;
+			}
+		}
+		misses.incrementAndGet();
+		// indexes are built outside of the cache lock, if two threads race the first cached index is kept
+		ContainmentIndex index = new ContainmentIndex(function);
+		synchronized (cache) {
+			ContainmentIndex cachedIndex = cache.get(key);
+			if(cachedIndex != null) {
+				return cachedIndex;
+			}
+			cache.put(key, index);
+			index.register();
+		}
+		return index;
+	}
+
+	/**
+	 * Maps the indexed nodes to this index, the caller must hold the cache lock
+	 */
+	private void register() {
+		for(Node node : nodes) {
+			nodeIndexes.put(node, this);
+		}
+	}
+
+	/**
+	 * Removes the node entries that map to this index, the caller must hold the cache lock
+	 */
+	private void unregister() {
+		for(Node node : nodes) {
+			nodeIndexes.remove(node, this);
+		}
+	}
+
+	/**
+	 * Returns the function whose containment tree is indexed
+	 * @return
+	 */
+	public Node getFunction() {
+		return function;
+	}
+
+	/**
+	 * Returns true if the given node is in the indexed containment tree
+	 * @param node
+	 * @return
+	 */
+	public boolean contains(Node node) {
+		return ids.containsKey(node);
+	}
+
+	/**
+	 * Returns the containing node of the given node or null if the node is
+	 * the indexed function or is not in the indexed containment tree
+	 * @param node
+	 * @return
+	 */
+	public Node getParent(Node node) {
+		Integer id = ids.get(node);
+		if(id == null || parents[id] < 0) {
+			return null;
+		}
+		return nodes[parents[id]];
+	}
+
+	/**
+	 * Returns the nearest containing control flow node of the given node or
+	 * null if one is not found, never returns the given node
+	 * @param node
+	 * @return
+	 */
+	public Node getContainingControlFlowNode(Node node) {
+		Integer id = ids.get(node);
+		return id == null ? null : containingControlFlowNodes[id];
+	}
+
+	/**
+	 * Returns the nearest containing function of the given node or null if
+	 * one is not found, never returns the given node
+	 * @param node
+	 * @return
+	 */
+	public Node getContainingFunction(Node node) {
+		Integer id = ids.get(node);
+		return id == null ? null : containingFunctions[id];
+	}
+
+	/**
+	 * Returns the number of indexed nodes
+	 * @return
+	 */
+	public int size() {
+		return nodes.length;
+	}
+
+	/**
+	 * Clears the cached containment indexes, this must be done if the index changes
+	 */
+	public static void clearCache() {
+		synchronized (cache) {
+			cache.clear();
+			nodeIndexes.clear();
+		}
+	}
+
+	/**
+	 * Sets the maximum number of cached containment indexes
+	 * @param capacity
+	 */
+	public static void setCapacity(int capacity) {
+		if(capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be positive.");
+		}
+		synchronized (cache) {
+			ContainmentIndex.capacity = capacity;
+			while(cache.size() > capacity) {
+				cache.remove(cache.keySet().iterator().next()).unregister();
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of lookups that were answered from the cache
+	 * @return
+	 */
+	public static long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Returns the number of lookups that required an index to be built
+	 * @return
+	 */
+	public static long getMisses() {
+		return misses.get();
+	}
+
+}
@@ -2,7 +2,6 @@ package com.se421.paths.support;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -13,7 +12,6 @@ import java.util.SortedSet;
 import java.util.TreeSet;
 
 import org.eclipse.core.resources.IFile;
-import org.eclipse.core.resources.IProject;
 
 import com.ensoftcorp.atlas.core.db.graph.Edge;
 import com.ensoftcorp.atlas.core.db.graph.Graph;
@@ -30,10 +28,6 @@ import com.ensoftcorp.atlas.core.xcsg.XCSG;
  */
 public class FormattedSourceCorrespondence implements Comparable<FormattedSourceCorrespondence> {
 	
-	// on demand cache of relative file paths -> character ranges for each line number
-	// a line number is represented by the index of the linked list
-	private static HashMap<String, LinkedList<Long>> cache = new HashMap<String, LinkedList<Long>>();
-	
 	private SourceCorrespondence sc;
 	private String name;
 	private String relativeFilePath;
@@ -183,33 +177,26 @@ public class FormattedSourceCorrespondence implements Comparable<FormattedSource
 	/**
 	 * The the internal cache for all source files
 	 * You should do this if the source file content or location changes
+	 * (modified files are detected and re-indexed automatically)
 	 */
 	public static void clearCache(){
-		cache = new HashMap<String, LinkedList<Long>>();
+		LineIndex.clearCache();
 	}
 	
 	/**
-	 * Builds a private static cache of of the new line boundaries for a given source file
+	 * Returns the new line boundaries for a given source file, the boundaries
+	 * are cached (see LineIndex)
 	 * @param sourceFile
 	 * @return
 	 * @throws IOException
+	 * @deprecated use LineIndex.get, which does not box the boundaries
 	 */
+	@Deprecated
 	public static LinkedList<Long> cacheFile(IFile sourceFile) throws IOException {
-		IProject project = sourceFile.getProject();
-		File baseDirectory = project.getLocation().toFile();
-		File file = sourceFile.getLocation().toFile();
-		String relativeFilePath = OSUtils.ResourceUtils.getRelativePath(file.getCanonicalPath(), baseDirectory.getParent(), File.separator);
-		LinkedList<Long> fileCache;
-		if(cache.containsKey(relativeFilePath)){
-			fileCache = cache.get(relativeFilePath);
-		} else {
-			fileCache = new LinkedList<Long>();
-			RandomAccessFile raf = new RandomAccessFile(file, "r");
-			while (raf.getFilePointer() < raf.length()) {
-				raf.readLine();
-				fileCache.add(new Long(raf.getFilePointer()));
-			}
-			raf.close();
+		LineIndex index = LineIndex.get(sourceFile.getLocation().toFile());
+		LinkedList<Long> fileCache = new LinkedList<Long>();
+		for(int i=0; i<index.getBoundaryCount(); i++) {
+			fileCache.add(index.getBoundary(i));
 		}
 		return fileCache;
 	}
@@ -221,20 +208,10 @@ public class FormattedSourceCorrespondence implements Comparable<FormattedSource
 	 * @throws IOException
 	 */
 	public static LineNumberRange getLineNumberRange(SourceCorrespondence sc) throws IOException {
-		LinkedList<Long> newLineBoundaries = cacheFile(sc.sourceFile);
+		LineIndex index = LineIndex.get(sc.sourceFile.getLocation().toFile());
 		long startChar = sc.offset;
 		long endChar = (sc.offset + sc.length);
-		int startLine = 1;
-		int endLine = 1;
-		for(long newLineCharBoundary : newLineBoundaries){
-			if(startChar >= newLineCharBoundary){
-				startLine++;
-			}
-			if(newLineCharBoundary <= endChar){
-				endLine++;
-			}
-		}
-		return new LineNumberRange(startLine, endLine);
+		return new LineNumberRange(index.getLineNumber(startChar), index.getLineNumber(endChar));
 	}
 
 	@Override
@@ -302,6 +279,34 @@ public class FormattedSourceCorrespondence implements Comparable<FormattedSource
 		return sourceCorrespondent;
 	}
 	
+	/**
+	 * Returns the starting line of the given node or -1 if the node does not have a
+	 * source correspondence. C and C++ nodes use the line recorded by the source
+	 * correspondence, other languages are resolved from the source file.
+	 * @param node
+	 * @return
+	 */
+	public static long getStartLineNumber(Node node) {
+		long line = -1;
+		if(node.taggedWith(XCSG.Language.C) || node.taggedWith(XCSG.Language.CPP)) {
+			if (node.hasAttr(XCSG.sourceCorrespondence)) {
+				SourceCorrespondence sc = (SourceCorrespondence) node.getAttr(XCSG.sourceCorrespondence);
+				if (sc != null) {
+					line = sc.startLine;
+				}
+			}
+		} else {
+			if (node.hasAttr(XCSG.sourceCorrespondence) && node.getAttr(XCSG.sourceCorrespondence) != null) {
+				try {
+					line = getSourceCorrespondent(node).getStartLineNumber();
+				} catch (IOException e) {
+					line = -1;
+				}
+			}
+		}
+		return line;
+	}
+	
 	/**
 	 * Given a Q, creates a pretty print summary the source graph element locations, line number ranges,
 	 * and names of graph elements that were methods (if enabled)
@@ -1,6 +1,9 @@
 package com.se421.paths.support;
 
+import java.util.BitSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -782,6 +785,11 @@ public final class HelperQueries {
 	 */
 	public static Node getContainingControlFlowNode(Node node) {
 		// NOTE: this logic considers that the enclosing control flow node may be two steps or more above
+		// nodes contained by a function are answered from the function's cached containment index
+		ContainmentIndex index = ContainmentIndex.getIndex(node);
+		if(index != null && index.contains(node)){
+			return index.getContainingControlFlowNode(node);
+		}
 		return getContainingNode(node, XCSG.ControlFlow_Node);
 	}
 
@@ -792,6 +800,11 @@ public final class HelperQueries {
 	 */
 	public static Node getContainingFunction(Node node) {
 		// NOTE: this logic considers that the enclosing function may be two steps or more above
+		// nodes contained by a function are answered from the function's cached containment index
+		ContainmentIndex index = ContainmentIndex.getIndex(node);
+		if(index != null && index.contains(node)){
+			return index.getContainingFunction(node);
+		}
 		return getContainingNode(node, XCSG.Function);
 	}
 	
@@ -823,8 +836,8 @@ public final class HelperQueries {
 	 * Given a function, a branch, and an event of interest returns true if the
 	 * branch governs whether or not the event of interest could be executed. If
 	 * true the branch could prevent the event from being executed. The branch
-	 * and event must both be contained in the same function. This method does 
-	 * not consider exceptional control flow paths.
+	 * and event must both be contained in the same function. This method
+	 * considers exceptional control flow paths.
 	 * 
 	 * @param function
 	 * @param branch
@@ -861,32 +874,46 @@ public final class HelperQueries {
 		if(!event.taggedWith(XCSG.ControlFlow_Node)){
 			throw new IllegalArgumentException("event parameter is not a control flow node!");
 		}
-		Q cfg = includeExceptionalPaths ? excfg(function) : cfg(function);
-		AtlasSet<Node> roots = cfg.roots().eval().nodes();
-		if(roots.size() != 1){
-			throw new RuntimeException("Function " + function.getAttr(XCSG.name) + " must only have one control flow root.");
-		}
-		Node root = roots.one();
-		// a lovely rare corner case here, a void method can have a loop
-		// with no termination conditions that forms a strongly connected
-		// component, so root -> ... SCC, since the SCC will not have any
-		// leaves could be empty. In order to deal with this we remove the
-		// back edges to make the cfg leaves explicit
-		AtlasSet<Node> exits = cfg.differenceEdges(cfg.edges(XCSG.ControlFlowBackEdge)).leaves().eval().nodes();
-		if(exits.isEmpty()){
-			throw new RuntimeException("Control flow graph does not have any exits.");
-		}
-		// is there a path from the root to the event that does not go through the branch?
-		// if not then all paths must be going through the branch to reach the event and so the branch dominates the event
-		boolean branchDominatesEvent = CommonQueries.isEmpty(cfg.between(Common.toQ(root), Common.toQ(event), Common.toQ(branch)));
-		if(branchDominatesEvent){
-			// is there a path that could be taken through at this branch where the event cannot occur?
-			// i.e. this branch could potentially block the event from occurring
-			boolean branchCanBlockEvent = !CommonQueries.isEmpty(cfg.between(Common.toQ(branch), Common.toQ(exits), Common.toQ(event)));
-			// returns branchDominatesEvent && branchCanBlockEvent
-			return branchCanBlockEvent;
+		// the branch governs the event if it dominates the event and the event does not post-dominate the branch
+		// i.e. all paths to the event go through the branch and there is a path through the branch where the event cannot occur
+		return DominanceIndex.getIndex(function, includeExceptionalPaths).isGoverningBranch(branch, event);
+	}
+
+	/**
+	 * Returns the governing branches of each of the given events (see
+	 * isGoverningBranch). The dominator trees of each function are computed
+	 * once and cached, so this is much faster than testing each pair of
+	 * branches and events. Like isGoverningBranch(branch, event), this method
+	 * considers exceptional control flow paths.
+	 * @param events
+	 *            ControlFlow_Node nodes
+	 * @return
+	 */
+	public static Map<Node,AtlasSet<Node>> getGoverningBranches(AtlasSet<Node> events){
+		return getGoverningBranches(events, true);
+	}
+
+	/**
+	 * Returns the governing branches of each of the given events (see
+	 * isGoverningBranch). The dominator trees of each function are computed
+	 * once and cached, so this is much faster than testing each pair of
+	 * branches and events.
+	 * @param events
+	 *            ControlFlow_Node nodes
+	 * @param includeExceptionalPaths
+	 *            If true considers exceptional control flow paths
+	 * @return
+	 */
+	public static Map<Node,AtlasSet<Node>> getGoverningBranches(AtlasSet<Node> events, boolean includeExceptionalPaths){
+		Map<Node,AtlasSet<Node>> governingBranches = new LinkedHashMap<Node,AtlasSet<Node>>();
+		for(Node event : events){
+			if(!event.taggedWith(XCSG.ControlFlow_Node)){
+				throw new IllegalArgumentException("event parameter is not a control flow node!");
+			}
+			Node function = getContainingFunction(event);
+			governingBranches.put(event, DominanceIndex.getIndex(function, includeExceptionalPaths).getGoverningBranches(event));
 		}
-		return false;
+		return governingBranches;
 	}
 
 	/**
@@ -1138,7 +1165,9 @@ public final class HelperQueries {
 	 * @return The call graph of given function(s)
 	 */
 	public static Q cg(Q funcs){
-		return edges(XCSG.Call).forward(funcs);
+		CallGraphIndex index = CallGraphIndex.getInstance();
+		// note: functions without call edges are not indexed, but still belong to their own call graph
+		return index.induce(index.forward(index.getFunctions(funcs))).union(funcs.nodes(XCSG.Function));
 	}
 	
 	/**
@@ -1147,7 +1176,9 @@ public final class HelperQueries {
 	 * @return The reverse call graph of given function(s)
 	 */
 	public static Q rcg(Q funcs){
-		return edges(XCSG.Call).reverse(funcs);
+		CallGraphIndex index = CallGraphIndex.getInstance();
+		// note: functions without call edges are not indexed, but still belong to their own call graph
+		return index.induce(index.reverse(index.getFunctions(funcs))).union(funcs.nodes(XCSG.Function));
 	}
 	
 	/**
@@ -1156,7 +1187,8 @@ public final class HelperQueries {
 	 * @return direct callers of given function(s)
 	 */
 	public static Q call(Q funcs){
-		return edges(XCSG.Call).predecessors(funcs);
+		CallGraphIndex index = CallGraphIndex.getInstance();
+		return Common.toQ(index.getNodes(index.callers(index.getFunctions(funcs))));
 	}
 	
 	/**
@@ -1165,7 +1197,8 @@ public final class HelperQueries {
 	 * @return direct callees by given function(s)
 	 */
 	public static Q calledBy(Q funcs){
-		return edges(XCSG.Call).successors(funcs);
+		CallGraphIndex index = CallGraphIndex.getInstance();
+		return Common.toQ(index.getNodes(index.callees(index.getFunctions(funcs))));
 	}
 	
 	/**
@@ -1202,30 +1235,22 @@ public final class HelperQueries {
 	 * @return the matching pair graph for object (object)
 	 */
 	public static Q mpg(Q e1Functions, Q e2Functions, Q object){
-		Q callL = call(e1Functions);
-		Q callU = call(e2Functions);
+		CallGraphIndex index = CallGraphIndex.getInstance();
+		BitSet l = index.getFunctions(e1Functions);
+		BitSet u = index.getFunctions(e2Functions);
+		BitSet callL = index.callers(l);
+		BitSet callU = index.callers(u);
 		if(object.eval().nodes().one().taggedWith(XCSG.GlobalVariable)){
-			callL = callL.intersection(refVariable(object));
-			callU = callU.intersection(refVariable(object));
+			BitSet ref = index.getFunctions(refVariable(object));
+			callL.and(ref);
+			callU.and(ref);
 		}else if(object.eval().nodes().one().taggedWith(XCSG.C.Struct)){
-			callL = callL.intersection(refType(object));
-			callU = callU.intersection(refType(object));
+			BitSet ref = index.getFunctions(refType(object));
+			callL.and(ref);
+			callU.and(ref);
 		}
-		Q rcg_lock = edges(XCSG.Call).reverse(callL);
-		Q rcg_unlock = edges(XCSG.Call).reverse(callU);
-		Q rcg_both = rcg_lock.intersection(rcg_unlock);
-		Q rcg_c = rcg_lock.union(rcg_unlock);
-		Q rcg_lock_only = rcg_lock.difference(rcg_both);
-		Q rcg_unlock_only = rcg_unlock.difference(rcg_both);
-		Q call_lock_only = callL.union(edges(XCSG.Call).reverseStep(rcg_lock_only));
-		Q call_unlock_only = callU.union(edges(XCSG.Call).reverseStep(rcg_unlock_only));
-		Q call_c_only = call_lock_only.union(call_unlock_only);
-		Q balanced = call_c_only.intersection(rcg_both);
-		Q ubc = balanced.union(rcg_lock_only, rcg_unlock_only);
-		Q mpg = rcg_c.intersection(edges(XCSG.Call).forward(ubc));
-		mpg = mpg.union(e1Functions, e2Functions);
-		mpg = mpg.induce(edges(XCSG.Call));
-		return mpg;
+		BitSet mpg = index.mpg(l, u, callL, callU);
+		return index.induce(mpg).union(e1Functions, e2Functions);
 	}
 	
 	/**
@@ -1486,8 +1511,8 @@ public final class HelperQueries {
 		}
 		
 		public static Graph reverseDF(AtlasSet<Node> origin, AtlasSet<Node> stop) {
-			Graph context = Common.universe().edgesTaggedWithAny(XCSG.DataFlow_Edge).eval();
-			return traverse(context, TraversalDirection.REVERSE, origin, stop);
+			// the data flow edges of the universe are indexed once per Atlas index
+			return DataFlowIndex.getInstance().traverse(TraversalDirection.REVERSE, origin, stop);
 		}
 		
 		public static Graph forwardDF(AtlasSet<Node> origin) {
@@ -1496,8 +1521,8 @@ public final class HelperQueries {
 		}
 		
 		public static Graph forwardDF(AtlasSet<Node> origin, AtlasSet<Node> stop) {
-			Graph context = Common.universe().edgesTaggedWithAny(XCSG.DataFlow_Edge).eval();
-			return traverse(context, TraversalDirection.FORWARD, origin, stop);
+			// the data flow edges of the universe are indexed once per Atlas index
+			return DataFlowIndex.getInstance().traverse(TraversalDirection.FORWARD, origin, stop);
 		}
 
 		/**
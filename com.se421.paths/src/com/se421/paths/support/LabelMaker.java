@@ -1,5 +1,6 @@
 package com.se421.paths.support;
 
+import java.awt.Color;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -94,4 +95,45 @@ public class LabelMaker {
 		return markup;
 	}
 	
+	/**
+	 * Colors each node by the given share (a value in [0, 1], for example the
+	 * fraction of paths passing through the node) from white (0) to red (1)
+	 * @param markup
+	 * @param shares
+	 * @return
+	 */
+	public static Markup setNodeHeatmap(Markup markup, Map<Node,Double> shares){
+		for(Entry<Node,Double> entry : shares.entrySet()){
+			markup.setNode(Common.toQ(entry.getKey()), MarkupProperty.NODE_BACKGROUND_COLOR, getHeatColor(entry.getValue(), Color.WHITE));
+		}
+		return markup;
+	}
+	
+	/**
+	 * Colors each edge by the given share (a value in [0, 1]) from gray (0) to red (1)
+	 * @param markup
+	 * @param shares
+	 * @return
+	 */
+	public static Markup setEdgeHeatmap(Markup markup, Map<Edge,Double> shares){
+		for(Entry<Edge,Double> entry : shares.entrySet()){
+			markup.setEdge(Common.toQ(entry.getKey()), MarkupProperty.EDGE_COLOR, getHeatColor(entry.getValue(), Color.GRAY));
+		}
+		return markup;
+	}
+	
+	/**
+	 * Interpolates between the given cold color (0) and red (1)
+	 * @param share
+	 * @param cold
+	 * @return
+	 */
+	private static Color getHeatColor(double share, Color cold){
+		double heat = Math.max(0.0, Math.min(1.0, share));
+		int red = (int) Math.round(cold.getRed() + (255 - cold.getRed()) * heat);
+		int green = (int) Math.round(cold.getGreen() * (1.0 - heat));
+		int blue = (int) Math.round(cold.getBlue() * (1.0 - heat));
+		return new Color(red, green, blue);
+	}
+	
 }
\ No newline at end of file
@@ -0,0 +1,194 @@
+package com.se421.paths.support;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An index of the line boundaries of a source file, used to convert file
+ * offsets to line numbers with a binary search.
+ *
+ * A line boundary is the offset just past a line terminator ("\n", "\r" or
+ * "\r\n"), the end of the file is also a boundary if the file does not end
+ * with a line terminator. Indexes are held in a bounded cache and rebuilt if
+ * the file is modified.
+ */
+public class LineIndex {
+
+	public static final int DEFAULT_CAPACITY = 512;
+
+	// files are read in blocks of this many bytes
+	// note: files are not memory mapped, a mapping is only released by the garbage
+	// collector and keeps the file from being saved or deleted on Windows until then
+	private static final int BLOCK_SIZE = 64 * 1024;
+
+	private static int capacity = DEFAULT_CAPACITY;
+
+	private static final LinkedHashMap<String,LineIndex> cache = new LinkedHashMap<String,LineIndex>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String,LineIndex> eldest) {
+			return size() > capacity;
+		}
+	};
+
+	private final long[] boundaries;
+	private final long lastModified;
+	private final long length;
+
+	private LineIndex(long[] boundaries, long lastModified, long length) {
+		this.boundaries = boundaries;
+		this.lastModified = lastModified;
+		this.length = length;
+	}
+
+	/**
+	 * Returns the (possibly cached) line index of the given file
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static LineIndex get(File file) throws IOException {
+		String key = file.getCanonicalPath();
+		long lastModified = file.lastModified();
+		long length = file.length();
+		synchronized (cache) {
+			LineIndex index = cache.get(key);
+			if(index != null && index.lastModified == lastModified && index.length == length) {
+				return index;
+			}
+		}
+
+		// index outside of the lock so that different files can be indexed concurrently
+		LineIndex index = new LineIndex(scan(file), lastModified, length);
+		synchronized (cache) {
+			cache.put(key, index);
+		}
+		return index;
+	}
+
+	/**
+	 * Scans the line boundaries of the given file
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	private static long[] scan(File file) throws IOException {
+		long[] boundaries = new long[1024];
+		int size = 0;
+		FileInputStream input = new FileInputStream(file);
+		try {
+			FileChannel channel = input.getChannel();
+			// the block is reused for the whole file, its backing array is scanned directly
+			ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+			byte[] bytes = block.array();
+			long position = 0;
+			int read;
+			boolean pendingCarriageReturn = false;
+			while((read = channel.read(block, position)) >= 0) {
+				for(int i=0; i<read; i++) {
+					byte b = bytes[i];
+					long offset = position + i;
+					if(pendingCarriageReturn) {
+						pendingCarriageReturn = false;
+						if(b == '\n') {
+							// "\r\n" is a single line terminator
+							boundaries[size - 1] = offset + 1;
+							continue;
+						}
+					}
+					if(b == '\n' || b == '\r') {
+						if(size == boundaries.length) {
+							boundaries = Arrays.copyOf(boundaries, size * 2);
+						}
+						boundaries[size++] = offset + 1;
+						pendingCarriageReturn = (b == '\r');
+					}
+				}
+				position += read;
+				block.clear();
+			}
+			long length = position;
+			// the last line does not need to be terminated
+			if(length > 0 && (size == 0 || boundaries[size - 1] != length)) {
+				if(size == boundaries.length) {
+					boundaries = Arrays.copyOf(boundaries, size + 1);
+				}
+				boundaries[size++] = length;
+			}
+		} finally {
+			input.close();
+		}
+		return Arrays.copyOf(boundaries, size);
+	}
+
+	/**
+	 * Returns the line number (starting at 1) of the given offset, that is one
+	 * plus the number of line boundaries at or before the offset
+	 * @param offset
+	 * @return
+	 */
+	public int getLineNumber(long offset) {
+		// binary search for the first boundary after the offset
+		int low = 0;
+		int high = boundaries.length;
+		while(low < high) {
+			int middle = (low + high) >>> 1;
+			if(boundaries[middle] <= offset) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low + 1;
+	}
+
+	/**
+	 * Returns the number of line boundaries in the file
+	 * @return
+	 */
+	public int getBoundaryCount() {
+		return boundaries.length;
+	}
+
+	/**
+	 * Returns the offset of the given line boundary
+	 * @param boundary
+	 * @return
+	 */
+	public long getBoundary(int boundary) {
+		return boundaries[boundary];
+	}
+
+	/**
+	 * Clears the cached line indexes
+	 */
+	public static void clearCache() {
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+
+	/**
+	 * Sets the maximum number of cached line indexes
+	 * @param capacity
+	 */
+	public static void setCapacity(int capacity) {
+		if(capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be positive.");
+		}
+		synchronized (cache) {
+			LineIndex.capacity = capacity;
+			while(cache.size() > capacity) {
+				cache.remove(cache.keySet().iterator().next());
+			}
+		}
+	}
+
+}
@@ -0,0 +1,182 @@
+package com.se421.paths.transforms;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.ensoftcorp.atlas.core.db.graph.Graph;
+import com.ensoftcorp.atlas.core.db.graph.Node;
+import com.ensoftcorp.atlas.core.query.Q;
+import com.ensoftcorp.atlas.core.script.Common;
+import com.se421.paths.graph.IndexedGraph;
+import com.se421.paths.support.HelperQueries;
+
+/**
+ * A size bounded, least recently used cache of DAG transformations keyed by
+ * the address of the function containing the control flow graph.
+ *
+ * The cache must be cleared whenever the Atlas index changes, since node
+ * addresses are not stable across index builds (the plugin activator takes
+ * care of this).
+ *
+ * Example Atlas Shell Usage:
+ * var dskqoptCFG = cfg(functions("dskqopt"))
+ * show(DAGCache.getDAG(dskqoptCFG))
+ */
+public final class DAGCache {
+
+	public static final int DEFAULT_CAPACITY = 256;
+
+	private static int capacity = DEFAULT_CAPACITY;
+	private static long hits = 0;
+	private static long misses = 0;
+
+	private static final LinkedHashMap<String,CachedDAG> cache = new LinkedHashMap<String,CachedDAG>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String,CachedDAG> eldest) {
+			return size() > capacity;
+		}
+	};
+
+	// hide constructor
+	private DAGCache() {}
+
+	/**
+	 * Returns the DAG transformation of the given control flow graph
+	 * 
+	 * Note: this creates the redirected back edges in the universe graph, use
+	 * getIndexedDAG if the index should not be modified.
+	 * 
+	 * @param cfg
+	 * @return
+	 */
+	public static Q getDAG(Q cfg) {
+		CachedDAG cachedDAG = getCachedDAG(cfg);
+		synchronized (cachedDAG) {
+			if(cachedDAG.dag == null) {
+				DAGTransform transformer = new DAGTransform();
+				cachedDAG.dag = transformer.transform(cachedDAG.cfg);
+			}
+			return cachedDAG.dag;
+		}
+	}
+
+	/**
+	 * Returns a snapshot of the DAG transformation of the given control flow
+	 * graph, the universe graph is not modified
+	 * @param cfg
+	 * @return
+	 */
+	public static IndexedGraph getIndexedDAG(Q cfg) {
+		CachedDAG cachedDAG = getCachedDAG(cfg);
+		synchronized (cachedDAG) {
+			if(cachedDAG.indexedDAG == null) {
+				DAGTransform transformer = new DAGTransform();
+				cachedDAG.indexedDAG = transformer.transformToIndexedGraph(cachedDAG.cfg);
+			}
+			return cachedDAG.indexedDAG;
+		}
+	}
+
+	private static CachedDAG getCachedDAG(Q cfg) {
+		Graph cfgGraph = cfg.eval();
+		String key = getKey(cfgGraph);
+		long nodes = cfgGraph.nodes().size();
+		long edges = cfgGraph.edges().size();
+		CachedDAG cachedDAG = new CachedDAG(Common.toQ(cfgGraph), nodes, edges);
+		if(key != null) {
+			synchronized (cache) {
+				CachedDAG existingDAG = cache.get(key);
+				// the same function may be given as a cfg or an excfg, only reuse a matching transformation
+				if(existingDAG != null && existingDAG.cfgNodes == nodes && existingDAG.cfgEdges == edges) {
+					hits++;
+					return existingDAG;
+				}
+				misses++;
+				cache.put(key, cachedDAG);
+			}
+		}
+		// note: the transformation is computed lazily outside of the cache lock
+		// so that different functions can be transformed concurrently
+		return cachedDAG;
+	}
+
+	/**
+	 * Returns the cache key of the given control flow graph or null if the
+	 * graph is not contained in a function
+	 * @param cfg
+	 * @return
+	 */
+	private static String getKey(Graph cfg) {
+		Node node = cfg.nodes().one();
+		if(node == null) {
+			return null;
+		}
+		Node function = HelperQueries.getContainingFunction(node);
+		if(function == null) {
+			return null;
+		}
+		return function.address().toAddressString();
+	}
+
+	/**
+	 * Clears the cache, this must be done if the index changes
+	 */
+	public static void clear() {
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+
+	/**
+	 * Sets the maximum number of cached transformations
+	 * @param capacity
+	 */
+	public static void setCapacity(int capacity) {
+		if(capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be positive.");
+		}
+		synchronized (cache) {
+			DAGCache.capacity = capacity;
+			while(cache.size() > capacity) {
+				cache.remove(cache.keySet().iterator().next());
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of lookups that were answered from the cache
+	 * @return
+	 */
+	public static long getHits() {
+		synchronized (cache) {
+			return hits;
+		}
+	}
+
+	/**
+	 * Returns the number of lookups that required a transformation
+	 * @return
+	 */
+	public static long getMisses() {
+		synchronized (cache) {
+			return misses;
+		}
+	}
+
+	private static class CachedDAG {
+		private final Q cfg;
+		private final long cfgNodes;
+		private final long cfgEdges;
+		private Q dag = null;
+		private IndexedGraph indexedDAG = null;
+
+		private CachedDAG(Q cfg, long cfgNodes, long cfgEdges) {
+			this.cfg = cfg;
+			this.cfgNodes = cfgNodes;
+			this.cfgEdges = cfgEdges;
+		}
+	}
+
+}
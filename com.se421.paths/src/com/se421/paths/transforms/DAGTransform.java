@@ -1,5 +1,13 @@
 package com.se421.paths.transforms;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
 import com.ensoftcorp.atlas.core.db.graph.Edge;
 import com.ensoftcorp.atlas.core.db.graph.Graph;
 import com.ensoftcorp.atlas.core.db.graph.Node;
@@ -9,109 +17,453 @@ import com.ensoftcorp.atlas.core.query.Q;
 import com.ensoftcorp.atlas.core.query.Query;
 import com.ensoftcorp.atlas.core.script.Common;
 import com.ensoftcorp.atlas.core.xcsg.XCSG;
+import com.se421.paths.graph.IndexedGraph;
+import com.se421.paths.graph.PathGraph;
+import com.se421.paths.graph.PrimitiveGraph;
 import com.se421.paths.support.HelperQueries;
 
 public class DAGTransform implements ProgramGraphTransform {
 
 	public static final String REDIRECTED_CONTROL_FLOW_BACK_EDGE = "REDIRECTED_CONTROL_FLOW_BACK_EDGE";
-	private Q dag;
+
+	// the control flow nodes inside of trap regions (exception handlers), computed once per index
+	private static volatile AtlasSet<Node> trapRegionNodes = null;
+
+	// the cfg being transformed
+	private PathGraph graph;
+
+	// the outgoing edges of node i occupy the slots [edgeOffsets[i], edgeOffsets[i+1]) of backEdges
+	private int[] edgeOffsets;
+	private boolean[] backEdges;
+	private int backEdgeCount;
+
+	// the predecessors of node i in the dag occupy the slots [predecessorOffsets[i], predecessorOffsets[i+1])
+	private int[] predecessorOffsets;
+	private int[] predecessors;
+
+	// the natural loop body of each loop header
+	private Map<Integer,BitSet> loopBodies;
+
 	/**
 	 * Transforms a CFG to an acyclic graph by redirecting control flow back edges
 	 * to loop successors that are 1) not inside the loop body and 2) not inside
 	 * trap regions (exception handlers).
 	 * 
+	 * Note: the redirected back edges are created in the universe graph (and
+	 * reused by later transformations), use transformToIndexedGraph to avoid
+	 * modifying the index.
+	 *
 	 * @param cfg
 	 * @return
 	 */
 	@Override
 	public Q transform(Q cfg) {
-		AtlasSet<Edge> backEdges = cfg.edges(XCSG.ControlFlowBackEdge).eval().edges();
-		dag = cfg.differenceEdges(Common.toQ(backEdges));
+		Graph cfgGraph = cfg.eval();
+		AtlasSet<Edge> cfgBackEdges = Common.toQ(cfgGraph).edges(XCSG.ControlFlowBackEdge).eval().edges();
+		Q dag = Common.toQ(cfgGraph).differenceEdges(Common.toQ(cfgBackEdges));
+		IndexedGraph indexedCFG = IndexedGraph.of(cfgGraph);
+		index(indexedCFG);
+
 		AtlasSet<Edge> redirectedBackEdges = new AtlasHashSet<Edge>();
-		for(Edge backEdge : backEdges) {
-			Node tail = backEdge.from();
-			Node header = backEdge.to(); // also the exit
-			AtlasSet<Node> candidateSuccessors = getCandidateSuccessors(cfg, tail, header);
-			
-			// for a do-while loop and goto's things can sometimes be reversed
-			// note that the loop header may also be the loop exit and vice versa, so which
-			// node we decide to label as the loop header is flexible
-			if(candidateSuccessors.isEmpty()) {
-				Node tmp = tail;
-				tail = header;
-				header = tmp;
-				candidateSuccessors = getCandidateSuccessors(dag, tail, header);
-				
-				// for source its cleaner to display the actual loop header as the tail of the
-				// redirected edge even if the "do" node is traditionally the loop header
-				if(header.taggedWith(XCSG.DoWhileLoop)) {
-					// restore the tail and header for display purposes so it looks like the
-					// header is the tail and the successor is the head of the redirected edge
-					// this is equivalent in terms of path counting
-					tmp = tail;
+		int[] redirections = getRedirectedBackEdges();
+		for(int i=0; i<redirections.length; i+=2) {
+			Edge redirectedBackEdge = getOrCreateRedirectedBackEdge(indexedCFG.getNode(redirections[i]), indexedCFG.getNode(redirections[i+1]));
+			redirectedBackEdges.add(redirectedBackEdge);
+		}
+		Q result = dag.union(Common.toQ(redirectedBackEdges));
+		return Common.toQ(result.eval());
+	}
+
+	/**
+	 * Transforms a CFG to an acyclic graph in the same way as transform, but
+	 * the result is a private snapshot in which the redirected back edges have
+	 * no corresponding Atlas edge. The universe graph is never modified, so
+	 * functions may be transformed concurrently and the result is reclaimed
+	 * along with the snapshot.
+	 *
+	 * @param cfg
+	 * @return
+	 */
+	public IndexedGraph transformToIndexedGraph(Q cfg) {
+		return transform(IndexedGraph.of(cfg));
+	}
+
+	/**
+	 * Transforms a snapshot of a CFG to an acyclic graph in the same way as
+	 * transformToIndexedGraph. A graph without back edges is returned as is.
+	 *
+	 * @param cfg
+	 * @return
+	 */
+	public IndexedGraph transform(IndexedGraph cfg) {
+		if(!hasBackEdges(cfg)) {
+			return cfg;
+		}
+		index(cfg);
+		int[] redirections = getRedirectedBackEdges();
+
+		int size = cfg.size();
+		Node[] nodes = new Node[size];
+		int maxEdges = cfg.edgeCount() + (redirections.length / 2);
+		int[] edgeSources = new int[maxEdges];
+		int[] edgeTargets = new int[maxEdges];
+		Edge[] edges = new Edge[maxEdges];
+		int edgeCount = 0;
+		for(int node=0; node<size; node++) {
+			nodes[node] = cfg.getNode(node);
+			for(int i=0; i<cfg.outDegree(node); i++) {
+				if(!cfg.isBackEdge(node, i)) {
+					edgeSources[edgeCount] = node;
+					edgeTargets[edgeCount] = cfg.successor(node, i);
+					edges[edgeCount] = cfg.getEdge(node, i);
+					edgeCount++;
+				}
+			}
+		}
+		for(int i=0; i<redirections.length; i+=2) {
+			edgeSources[edgeCount] = redirections[i];
+			edgeTargets[edgeCount] = redirections[i+1];
+			edgeCount++;
+		}
+		return IndexedGraph.of(nodes, edgeSources, edgeTargets, edges, edgeCount);
+	}
+
+	/**
+	 * Transforms a CFG to an acyclic graph in the same way as transformToIndexedGraph.
+	 * A graph without back edges is returned as is.
+	 * 
+	 * Note: trap regions and do-while loops are only known for Atlas graphs
+	 * (IndexedGraph), other graphs are treated as having neither.
+	 *
+	 * @param cfg
+	 * @return
+	 */
+	public PathGraph transform(PathGraph cfg) {
+		if(cfg instanceof IndexedGraph) {
+			return transform((IndexedGraph) cfg);
+		}
+		if(!hasBackEdges(cfg)) {
+			return cfg;
+		}
+		index(cfg);
+		int[] redirections = getRedirectedBackEdges();
+
+		PrimitiveGraph.Builder dag = new PrimitiveGraph.Builder();
+		for(int node=0; node<cfg.size(); node++) {
+			dag.addNode(cfg.getLineNumber(node));
+		}
+		for(int node=0; node<cfg.size(); node++) {
+			for(int i=0; i<cfg.outDegree(node); i++) {
+				if(!cfg.isBackEdge(node, i)) {
+					dag.addEdge(node, cfg.successor(node, i));
+				}
+			}
+		}
+		for(int i=0; i<redirections.length; i+=2) {
+			dag.addEdge(redirections[i], redirections[i+1]);
+		}
+		return dag.build();
+	}
+
+	private static boolean hasBackEdges(PathGraph graph) {
+		for(int node=0; node<graph.size(); node++) {
+			for(int i=0; i<graph.outDegree(node); i++) {
+				if(graph.isBackEdge(node, i)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the distinct redirected back edges of the indexed cfg as
+	 * consecutive (predecessor, successor) pairs of node indices
+	 * @return
+	 */
+	private int[] getRedirectedBackEdges() {
+		HashSet<Long> redirectedBackEdges = new HashSet<Long>();
+		int[] redirections = new int[backEdgeCount * 2];
+		int redirectionCount = 0;
+		for(int node=0; node<graph.size(); node++) {
+			for(int i=0; i<graph.outDegree(node); i++) {
+				if(!graph.isBackEdge(node, i)) {
+					continue;
+				}
+				int tail = node;
+				int header = graph.successor(node, i); // also the exit
+				List<Integer> candidateSuccessors = getCandidateSuccessors(true, header, getLoopBody(header));
+
+				// for a do-while loop and goto's things can sometimes be reversed
+				// note that the loop header may also be the loop exit and vice versa, so which
+				// node we decide to label as the loop header is flexible
+				if(candidateSuccessors.isEmpty()) {
+					int tmp = tail;
 					tail = header;
 					header = tmp;
+					candidateSuccessors = getCandidateSuccessors(false, header, getLoopBody(header, tail));
+
+					// for source its cleaner to display the actual loop header as the tail of the
+					// redirected edge even if the "do" node is traditionally the loop header
+					if(isDoWhileLoop(header)) {
+						// restore the tail and header for display purposes so it looks like the
+						// header is the tail and the successor is the head of the redirected edge
+						// this is equivalent in terms of path counting
+						tmp = tail;
+						tail = header;
+						header = tmp;
+					}
+				}
+
+				// assert that there should always be exactly 1 candidate successor
+				if(candidateSuccessors.isEmpty()) {
+					throw new RuntimeException("No candidate successors could be found for [" + getAddress(header) + "].");
+				} else if(candidateSuccessors.size() > 1) {
+					throw new RuntimeException("Header [" + getAddress(header) + "] has multiple successors candidates.");
+				}
+
+				// add the redirected back edge (at most one edge between a given pair of nodes)
+				int successor = candidateSuccessors.get(0);
+				if(redirectedBackEdges.add((((long) tail) << 32) | successor)) {
+					redirections[redirectionCount++] = tail;
+					redirections[redirectionCount++] = successor;
 				}
 			}
-			
-			// assert that there should always be exactly 1 candidate successor
-			if(candidateSuccessors.isEmpty()) {
-				throw new RuntimeException("No candidate successors could be found for [" + header.address().toAddressString() + "].");
-			} else if(candidateSuccessors.size() > 1) {
-				throw new RuntimeException("Header [" + header.address().toAddressString() + "] has multiple successors candidates.");
-			}
-			
-			// add the redirected back edge
-			Node successor = candidateSuccessors.one();
-			Edge redirectedBackEdge = getOrCreateRedirectedBackEdge(tail, successor);
-			redirectedBackEdges.add(redirectedBackEdge);
 		}
-		Q result = dag.union(Common.toQ(redirectedBackEdges));
-		return Common.toQ(result.eval());
+		return Arrays.copyOf(redirections, redirectionCount);
+	}
+
+	/**
+	 * Indexes the back edges of the cfg and the predecessors of each node in
+	 * the dag, so that loop bodies can be computed without issuing queries
+	 * @param cfg
+	 */
+	private void index(PathGraph cfg) {
+		graph = cfg;
+		int size = graph.size();
+		edgeOffsets = new int[size + 1];
+		for(int node=0; node<size; node++) {
+			edgeOffsets[node + 1] = edgeOffsets[node] + graph.outDegree(node);
+		}
+		backEdges = new boolean[graph.edgeCount()];
+		backEdgeCount = 0;
+		predecessorOffsets = new int[size + 1];
+		for(int node=0; node<size; node++) {
+			for(int i=0; i<graph.outDegree(node); i++) {
+				if(graph.isBackEdge(node, i)) {
+					backEdges[edgeOffsets[node] + i] = true;
+					backEdgeCount++;
+				} else {
+					predecessorOffsets[graph.successor(node, i) + 1]++;
+				}
+			}
+		}
+		for(int node=0; node<size; node++) {
+			predecessorOffsets[node + 1] += predecessorOffsets[node];
+		}
+		predecessors = new int[predecessorOffsets[size]];
+		int[] next = new int[size];
+		System.arraycopy(predecessorOffsets, 0, next, 0, size);
+		for(int node=0; node<size; node++) {
+			for(int i=0; i<graph.outDegree(node); i++) {
+				if(!backEdges[edgeOffsets[node] + i]) {
+					predecessors[next[graph.successor(node, i)]++] = node;
+				}
+			}
+		}
+		loopBodies = new HashMap<Integer,BitSet>();
+	}
+
+	/**
+	 * Returns true if the given node is a do-while loop header
+	 * @param node
+	 * @return
+	 */
+	private boolean isDoWhileLoop(int node) {
+		return (graph instanceof IndexedGraph) && ((IndexedGraph) graph).getNode(node).taggedWith(XCSG.DoWhileLoop);
+	}
+
+	/**
+	 * Returns true if the given node is inside of a trap region (exception handler)
+	 * @param node
+	 * @return
+	 */
+	private boolean isTrapRegion(int node) {
+		return (graph instanceof IndexedGraph) && getTrapRegionNodes().contains(((IndexedGraph) graph).getNode(node));
+	}
+
+	private String getAddress(int node) {
+		if(graph instanceof IndexedGraph) {
+			return ((IndexedGraph) graph).getNode(node).address().toAddressString();
+		}
+		return Integer.toString(node);
 	}
 
 	/**
 	 * Get the candidate successors that are 1) not inside the loop body and 2) not inside
 	 * trap regions (exception handlers).
-	 * @param dag
-	 * @param tail
+	 * @param includeBackEdges true if successors along cfg back edges should be considered
 	 * @param header
+	 * @param loopBody
 	 * @return
 	 */
-	private AtlasSet<Node> getCandidateSuccessors(Q cfg, Node tail, Node header){
-		Q loopBodyPathToTail = dag.between(Common.toQ(header), Common.toQ(tail));
-		AtlasSet<Node> succesorsOutsideLoop = new AtlasHashSet<Node>(cfg.differenceEdges(loopBodyPathToTail)
-		.successors(Common.toQ(header)).eval().nodes());
+	private List<Integer> getCandidateSuccessors(boolean includeBackEdges, int header, BitSet loopBody){
+		// a successor is outside of the loop if it cannot reach the loop tail in the dag
+		// note: successors along back edges are never part of the loop body path to the tail
+		List<Integer> succesorsOutsideLoop = new ArrayList<Integer>();
+		for(int i=0; i<graph.outDegree(header); i++) {
+			int successor = graph.successor(header, i);
+			boolean backEdge = backEdges[edgeOffsets[header] + i];
+			if(backEdge ? !includeBackEdges : loopBody.get(successor)) {
+				continue;
+			}
+			if(!succesorsOutsideLoop.contains(successor)) {
+				succesorsOutsideLoop.add(successor);
+			}
+		}
 		if(succesorsOutsideLoop.size()!=0) {
-			if(cfg.betweenStep(Common.toQ(header),Common.toQ(succesorsOutsideLoop.getFirst())).edges(XCSG.ControlFlowBackEdge).eval().edges().size()>0) {
-				succesorsOutsideLoop = getCandidateSuccessors(cfg,header,succesorsOutsideLoop.getFirst());
+			int successor = succesorsOutsideLoop.get(0);
+			if(includeBackEdges && hasBackEdge(header, successor)) {
+				succesorsOutsideLoop = getCandidateSuccessors(includeBackEdges, successor, getLoopBody(successor));
+			}
+		}
+		List<Integer> candidateSuccessors = new ArrayList<Integer>(succesorsOutsideLoop.size());
+		for(int successor : succesorsOutsideLoop) {
+			if(!isTrapRegion(successor)) {
+				candidateSuccessors.add(successor);
 			}
 		}
-		Q catchBlockControlFlowNodes = HelperQueries.localDeclarations(Query.universe().nodes(XCSG.CatchBlock)).nodes(XCSG.ControlFlow_Node);
-		AtlasSet<Node> candidateSuccessors = Common.toQ(succesorsOutsideLoop).difference(catchBlockControlFlowNodes).eval().nodes();
 		return candidateSuccessors;
 	}
-	
+
+	/**
+	 * Returns true if there is a control flow back edge from the predecessor to the successor
+	 * @param predecessor
+	 * @param successor
+	 * @return
+	 */
+	private boolean hasBackEdge(int predecessor, int successor) {
+		for(int i=0; i<graph.outDegree(predecessor); i++) {
+			if(backEdges[edgeOffsets[predecessor] + i] && graph.successor(predecessor, i) == successor) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the natural loop body of the given loop header, that is the nodes
+	 * that reach the tail of any back edge to the header without passing through
+	 * the header. Each loop body is computed once per transformation.
+	 * @param header
+	 * @return
+	 */
+	private BitSet getLoopBody(int header) {
+		BitSet loopBody = loopBodies.get(header);
+		if(loopBody == null) {
+			List<Integer> tails = new ArrayList<Integer>();
+			for(int node=0; node<graph.size(); node++) {
+				if(hasBackEdge(node, header)) {
+					tails.add(node);
+				}
+			}
+			loopBody = getReverseReachable(header, tails);
+			loopBodies.put(header, loopBody);
+		}
+		return loopBody;
+	}
+
+	/**
+	 * Returns the nodes that reach the given tail in the dag without passing
+	 * through the given header
+	 * @param header
+	 * @param tail
+	 * @return
+	 */
+	private BitSet getLoopBody(int header, int tail) {
+		List<Integer> tails = new ArrayList<Integer>(1);
+		tails.add(tail);
+		return getReverseReachable(header, tails);
+	}
+
+	private BitSet getReverseReachable(int header, List<Integer> tails) {
+		BitSet reachable = new BitSet(graph.size());
+		int[] worklist = new int[graph.size()];
+		int size = 0;
+		for(int tail : tails) {
+			if(!reachable.get(tail)) {
+				reachable.set(tail);
+				worklist[size++] = tail;
+			}
+		}
+		while(size > 0) {
+			int node = worklist[--size];
+			if(node == header) {
+				continue;
+			}
+			for(int i=predecessorOffsets[node]; i<predecessorOffsets[node + 1]; i++) {
+				int predecessor = predecessors[i];
+				if(!reachable.get(predecessor)) {
+					reachable.set(predecessor);
+					worklist[size++] = predecessor;
+				}
+			}
+		}
+		return reachable;
+	}
+
+	/**
+	 * Returns the control flow nodes declared under catch blocks, this is
+	 * computed once and reused until the cache is cleared
+	 * @return
+	 */
+	private static AtlasSet<Node> getTrapRegionNodes() {
+		AtlasSet<Node> result = trapRegionNodes;
+		if(result == null) {
+			synchronized (DAGTransform.class) {
+				result = trapRegionNodes;
+				if(result == null) {
+					Q catchBlockControlFlowNodes = HelperQueries.localDeclarations(Query.universe().nodes(XCSG.CatchBlock)).nodes(XCSG.ControlFlow_Node);
+					result = new AtlasHashSet<Node>(catchBlockControlFlowNodes.eval().nodes());
+					trapRegionNodes = result;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Clears the cached trap regions, this must be done if the index changes
+	 */
+	public static void clearCache() {
+		trapRegionNodes = null;
+	}
+
 	/**
 	 * Creates an NPATH edge if it does not already exist between(predecessor,successor).
-	 * 
+	 *
+	 * The lookup and creation are done atomically so that functions can be
+	 * transformed concurrently without creating duplicate edges.
+	 *
 	 * @param predecessor
 	 * @param successor
 	 * @return
 	 */
 	private Edge getOrCreateRedirectedBackEdge(Node predecessor, Node successor) {
-		Q npathEdges = Query.universe().edges(REDIRECTED_CONTROL_FLOW_BACK_EDGE);
-		Q betweenEdges = npathEdges.betweenStep(Common.toQ(predecessor), Common.toQ(successor));
-		
-		// first search to see if there is an existing edge
-		Edge redirectedBackEdge = betweenEdges.eval().edges().one();
-		
-		// if the edge doesn't exist already then create it
-		if(redirectedBackEdge == null) {
-			redirectedBackEdge = Graph.U.createEdge(predecessor, successor);
-			redirectedBackEdge.tag(REDIRECTED_CONTROL_FLOW_BACK_EDGE);
-		}
-		return redirectedBackEdge;
-	}
-	
+		synchronized (DAGTransform.class) {
+			Q npathEdges = Query.universe().edges(REDIRECTED_CONTROL_FLOW_BACK_EDGE);
+			Q betweenEdges = npathEdges.betweenStep(Common.toQ(predecessor), Common.toQ(successor));
+
+			// first search to see if there is an existing edge
+			Edge redirectedBackEdge = betweenEdges.eval().edges().one();
+
+			// if the edge doesn't exist already then create it
+			if(redirectedBackEdge == null) {
+				redirectedBackEdge = Graph.U.createEdge(predecessor, successor);
+				redirectedBackEdge.tag(REDIRECTED_CONTROL_FLOW_BACK_EDGE);
+			}
+			return redirectedBackEdge;
+		}
+	}
+
 }